@@ -0,0 +1,413 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.CRC32;
+
+/**
+ * Directory of analysis results, keyed by the content of the analyzed
+ * image and the feature extractors.
+ *
+ * The key is a SHA-256 hash of the foreground pixels (after binarization,
+ * so it covers the binarizer) and the names of the feature extractors.
+ * An entry stores the region table and the runs of the regions, the label
+ * map is restored from the runs. Contours are not stored, they are traced
+ * again on first access like other lazy features.
+ *
+ * Entries are little endian files with a CRC32 at the end, entries that do
+ * not match their checksum are deleted and count as missing. Reading an
+ * entry marks it as used; when the entries exceed the maximum size, the
+ * least recently used ones are deleted. Several threads and processes may
+ * share a directory.
+ */
+public class AnalysisCache {
+
+	public static final long DEFAULT_MAX_SIZE = 256L << 20;
+
+	//"RFAC" read as little endian int
+	private static final int MAGIC = 0x43414652;
+	private static final int VERSION = 1;
+	//magic, version, width, height, rows, columns, run count
+	private static final int HEADER_SIZE = 28;
+	private static final int CHECKSUM_SIZE = 4;
+	private static final String SUFFIX = ".analysis";
+	private static final String TEMP_SUFFIX = ".tmp";
+	//temporary files of writers that did not finish
+	private static final long TEMP_FILE_AGE = 24L * 60 * 60 * 1000;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File directory;
+	private final long maxSize;
+
+	public AnalysisCache(final File directory, final long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		directory.mkdirs();
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Key of the analysis of the pixels by the extractor, the file name of
+	 * its entry without suffix.
+	 */
+	public String getKey(final PixelSource source, final Extractor extractor) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		int width = source.getWidth();
+		int height = source.getHeight();
+		int wordCount = BinaryImage.getWordCount(width);
+		ByteBuffer bytes = ByteBuffer.allocate(Math.max(wordCount * 8, 16)).order(ByteOrder.LITTLE_ENDIAN);
+		bytes.putInt(VERSION).putInt(width).putInt(height);
+		bytes.flip();
+		digest.update(bytes);
+
+		//the bits after the last pixel of a row are not part of the image
+		long words[] = new long[wordCount];
+		long lastWordMask = (width & 63) == 0 ? -1L : (1L << (width & 63)) - 1;
+		for (int yPos = 0; yPos < height && wordCount > 0; ++yPos) {
+			source.getForegroundBits(yPos, words);
+			words[wordCount - 1] &= lastWordMask;
+			bytes.clear();
+			bytes.asLongBuffer().put(words);
+			bytes.limit(wordCount * 8);
+			digest.update(bytes);
+		}
+
+		for (FeatureExtractor featureExtractor : extractor.getFeatureExtractors()) {
+			byte name[] = featureExtractor.getName().getBytes(UTF8);
+			bytes.clear();
+			bytes.putInt(name.length);
+			bytes.flip();
+			digest.update(bytes);
+			digest.update(name);
+		}
+
+		StringBuilder key = new StringBuilder(64);
+		for (byte value : digest.digest()) {
+			key.append(Character.forDigit((value >> 4) & 15, 16)).append(Character.forDigit(value & 15, 16));
+		}
+		return key.toString();
+	}
+
+	//the cached result of the key, null if there is none or it is corrupted
+	public AnalysisResult get(final String key) {
+		File file = new File(directory, key + SUFFIX);
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			AnalysisResult result = read(file);
+			file.setLastModified(System.currentTimeMillis());
+			return result;
+		} catch (IOException e) {
+			System.err.println("Removing cache entry " + file + ": " + e.getMessage());
+			file.delete();
+			return null;
+		} catch (RuntimeException e) {
+			//inconsistent counts in a file that matches its checksum by chance
+			System.err.println("Removing cache entry " + file + ": " + e);
+			file.delete();
+			return null;
+		}
+	}
+
+	//stores the result under the key, failures only leave the entry out
+	public void put(final String key, final AnalysisResult result) {
+		File temp = null;
+		try {
+			temp = File.createTempFile("entry", TEMP_SUFFIX, directory);
+			write(result, temp);
+			File file = new File(directory, key + SUFFIX);
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			evict();
+		} catch (IOException e) {
+			System.err.println("Could not cache analysis: " + e.getMessage());
+			if (temp != null) {
+				temp.delete();
+			}
+		}
+	}
+
+	//deletes the least recently used entries until the entries fit into the maximum size
+	private void evict() {
+		File files[] = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		int count = 0;
+		long size = 0;
+		final long lastUses[] = new long[files.length];
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(SUFFIX)) {
+				lastUses[count] = file.lastModified();
+				files[count++] = file;
+				size += file.length();
+			} else if (name.endsWith(TEMP_SUFFIX) && now - file.lastModified() > TEMP_FILE_AGE) {
+				file.delete();
+			}
+		}
+		if (size <= maxSize) {
+			return;
+		}
+
+		Integer order[] = new Integer[count];
+		for (int i = 0; i < count; ++i) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Long.compare(lastUses[a], lastUses[b]);
+			}
+		});
+		for (int i = 0; i < count && size > maxSize; ++i) {
+			File file = files[order[i]];
+			long length = file.length();
+			if (file.delete()) {
+				size -= length;
+			}
+		}
+	}
+
+	//removes all entries
+	public void clear() {
+		File files[] = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.getName().endsWith(SUFFIX)) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	private static void write(final AnalysisResult result, final File file) throws IOException {
+		RegionTable table = result.getRegionTable();
+		FileChannel channel = new FileOutputStream(file).getChannel();
+		try {
+			ChannelOutput out = new ChannelOutput(channel);
+			//lazy features of published regions may be computed meanwhile, they lock the table
+			synchronized (table) {
+				int rows = table.size();
+				int runCount = 0;
+				int runCounts[] = new int[rows];
+				for (int row = 0; row < rows; ++row) {
+					RegionRuns runs = table.getRuns(row);
+					runCounts[row] = runs != null ? runs.getRunCount() : 0;
+					runCount += runCounts[row];
+				}
+
+				out.putInt(MAGIC);
+				out.putInt(VERSION);
+				out.putInt(result.getImageWidth());
+				out.putInt(result.getImageHeight());
+				out.putInt(rows);
+				out.putInt(table.getColumnCount());
+				out.putInt(runCount);
+				for (int column = 0; column < table.getColumnCount(); ++column) {
+					byte name[] = table.getColumnName(column).getBytes(UTF8);
+					out.putInt(name.length);
+					out.putBytes(name, name.length);
+				}
+
+				//contours are not stored
+				byte flags[] = Arrays.copyOf(table.getFlags(), rows);
+				for (int row = 0; row < rows; ++row) {
+					flags[row] &= ~RegionTable.CONTOURS;
+				}
+				out.putBytes(flags, rows);
+				out.putInts(table.getIDs(), 0, rows);
+				out.putInts(table.getBoxX(), 0, rows);
+				out.putInts(table.getBoxY(), 0, rows);
+				out.putInts(table.getBoxWidth(), 0, rows);
+				out.putInts(table.getBoxHeight(), 0, rows);
+				out.putFloats(table.getArea(), rows);
+				out.putInts(table.getCentroidX(), 0, rows);
+				out.putInts(table.getCentroidY(), 0, rows);
+				out.putDoubles(table.getOrientationAngle(), 0, 1, rows);
+				out.putDoubles(table.getEccentricity(), 0, 1, rows);
+				out.putDoubles(table.getHuMoments(), 0, 1, rows * RegionTable.HU_MOMENT_COUNT);
+				for (int column = 0; column < table.getColumnCount(); ++column) {
+					out.putDoubles(table.getColumn(column), 0, 1, rows);
+				}
+
+				out.putInts(runCounts, 0, rows);
+				for (int row = 0; row < rows; ++row) {
+					RegionRuns runs = table.getRuns(row);
+					for (int run = 0; run < runCounts[row]; ++run) {
+						out.putInt(runs.getRow(run));
+						out.putInt(runs.getStart(run));
+						out.putInt(runs.getEnd(run));
+					}
+				}
+			}
+			out.putInt(out.getChecksum());
+			out.flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static AnalysisResult read(final File file) throws IOException {
+		ByteBuffer buffer;
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = input.getChannel();
+			long size = channel.size();
+			if (size < HEADER_SIZE + CHECKSUM_SIZE || size > Integer.MAX_VALUE) {
+				throw new IOException("Invalid size " + size);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+		} finally {
+			input.close();
+		}
+
+		int end = buffer.capacity() - CHECKSUM_SIZE;
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException("Not a cache entry of this version");
+		}
+		CRC32 checksum = new CRC32();
+		ByteBuffer content = buffer.duplicate();
+		content.limit(end);
+		checksum.update(content);
+		if ((int) checksum.getValue() != buffer.getInt(end)) {
+			throw new IOException("Checksum mismatch");
+		}
+
+		buffer.position(8);
+		int width = buffer.getInt();
+		int height = buffer.getInt();
+		int rows = buffer.getInt();
+		int columnCount = buffer.getInt();
+		int runCount = buffer.getInt();
+		if (width < 0 || height < 0 || (long) width * height > Integer.MAX_VALUE || rows < 0 || columnCount < 0 || runCount < 0) {
+			throw new IOException("Invalid counts");
+		}
+
+		RegionTable table = new RegionTable(rows);
+		for (int column = 0; column < columnCount; ++column) {
+			byte name[] = new byte[buffer.getInt()];
+			buffer.get(name);
+			table.addColumn(new String(name, UTF8));
+		}
+		for (int row = 0; row < rows; ++row) {
+			table.addRow(0);
+		}
+		long expected = buffer.position() + (long) rows * (1 + 4 * 7 + 4 + 8 * (2 + RegionTable.HU_MOMENT_COUNT + columnCount) + 4)
+				+ runCount * 12L;
+		if (expected != end) {
+			throw new IOException("Invalid size " + buffer.capacity());
+		}
+
+		buffer.get(table.getFlags(), 0, rows);
+		getInts(buffer, table.getIDs(), rows);
+		getInts(buffer, table.getBoxX(), rows);
+		getInts(buffer, table.getBoxY(), rows);
+		getInts(buffer, table.getBoxWidth(), rows);
+		getInts(buffer, table.getBoxHeight(), rows);
+		buffer.asFloatBuffer().get(table.getArea(), 0, rows);
+		buffer.position(buffer.position() + rows * 4);
+		getInts(buffer, table.getCentroidX(), rows);
+		getInts(buffer, table.getCentroidY(), rows);
+		getDoubles(buffer, table.getOrientationAngle(), rows);
+		getDoubles(buffer, table.getEccentricity(), rows);
+		getDoubles(buffer, table.getHuMoments(), rows * RegionTable.HU_MOMENT_COUNT);
+		for (int column = 0; column < columnCount; ++column) {
+			getDoubles(buffer, table.getColumn(column), rows);
+		}
+
+		//runs and the label map, ids equal rows as in every analysis result
+		int runCounts[] = new int[rows];
+		getInts(buffer, runCounts, rows);
+		int labels[] = new int[width * height];
+		long remaining = runCount;
+		for (int row = 0; row < rows; ++row) {
+			if (table.getID(row) != row || runCounts[row] < 0 || runCounts[row] > remaining) {
+				throw new IOException("Invalid region " + row);
+			}
+			remaining -= runCounts[row];
+			int runs[] = new int[runCounts[row] * 3];
+			getInts(buffer, runs, runs.length);
+			for (int run = 0; run < runs.length; run += 3) {
+				int yPos = runs[run];
+				int xStart = runs[run + 1];
+				int xEnd = runs[run + 2];
+				if (yPos < 0 || yPos >= height || xStart < 0 || xStart > xEnd || xEnd >= width) {
+					throw new IOException("Invalid run of region " + row);
+				}
+				Arrays.fill(labels, yPos * width + xStart, yPos * width + xEnd + 1, row + 1);
+			}
+			table.setRuns(row, new RegionRuns(runs, runCounts[row]));
+		}
+		if (remaining != 0) {
+			throw new IOException("Invalid run count");
+		}
+
+		table.setLazyFeatures(new LazyFeatures(labels, width, height));
+		return new AnalysisResult(width, height, labels, table);
+	}
+
+	private static void getInts(final ByteBuffer buffer, final int dest[], final int count) {
+		buffer.asIntBuffer().get(dest, 0, count);
+		buffer.position(buffer.position() + count * 4);
+	}
+
+	private static void getDoubles(final ByteBuffer buffer, final double dest[], final int count) {
+		buffer.asDoubleBuffer().get(dest, 0, count);
+		buffer.position(buffer.position() + count * 8);
+	}
+}
@@ -0,0 +1,45 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.util.List;
+
+/**
+ * Informed about the background analysis of the image shown by an
+ * ImageAnalyzer, on the callback executor of the analyzer.
+ */
+public interface AnalysisListener {
+
+	//regions found since the last call, they are in the region manager already
+	public void onRegionsFound(List<Region> regions);
+
+	public void onAnalysisProgress(int percent);
+
+	//the analysis of the current image finished, its regions replace the regions found
+	public void onAnalysisDone(AnalysisResult result);
+
+	//the analysis of the current image failed, the regions found so far are removed
+	public void onAnalysisFailed(Throwable cause);
+}
@@ -0,0 +1,112 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Immutable result of an analysis: the regions of an image, the label
+ * map that assigns every pixel to its region, a grid index over the
+ * bounding boxes of the regions and a similarity index over their features.
+ */
+public class AnalysisResult {
+
+	private final int imageWidth;
+	private final int imageHeight;
+	//region id + 1 per pixel, 0 is background
+	private final int labels[];
+	private final RegionTable table;
+	//views of the table rows
+	private final List<Region> regions;
+	private final RegionGrid regionGrid;
+	//built on the first similarity query
+	private SimilarityIndex similarityIndex;
+
+	//the row of a region in the table is its id
+	AnalysisResult(final int imageWidth, final int imageHeight, final int labels[], final RegionTable table) {
+		this.imageWidth = imageWidth;
+		this.imageHeight = imageHeight;
+		this.labels = labels;
+		this.table = table;
+		this.regions = new AbstractList<Region>() {
+			@Override
+			public Region get(final int index) {
+				return table.getRegion(index);
+			}
+
+			@Override
+			public int size() {
+				return table.size();
+			}
+		};
+		this.regionGrid = new RegionGrid(imageWidth, imageHeight, table);
+	}
+
+	public int getImageWidth() {
+		return imageWidth;
+	}
+
+	public int getImageHeight() {
+		return imageHeight;
+	}
+
+	public int getRegionCount() {
+		return table.size();
+	}
+
+	public Region getRegion(final int id) {
+		return table.getRegion(id);
+	}
+
+	//column store of the region features, should not be modified
+	public RegionTable getRegionTable() {
+		return table;
+	}
+
+	public List<Region> getRegions() {
+		return regions;
+	}
+
+	//ids of all regions whose bounding box intersects the rectangle
+	public int[] getRegionIDsIn(final int xPos, final int yPos, final int width, final int height) {
+		return regionGrid.query(xPos, yPos, width, height);
+	}
+
+	public synchronized SimilarityIndex getSimilarityIndex() {
+		if (similarityIndex == null) {
+			similarityIndex = new SimilarityIndex(table);
+		}
+		return similarityIndex;
+	}
+
+	//id of the region covering the position, -1 for background
+	public int getRegionID(final int xPos, final int yPos) {
+		if (xPos < 0 || yPos < 0 || xPos >= imageWidth || yPos >= imageHeight) {
+			return -1;
+		}
+		return labels[yPos * imageWidth + xPos] - 1;
+	}
+}
@@ -0,0 +1,364 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Analysis state of one image: the region store, the labeling buffers and
+ * the similarity thresholds.
+ *
+ * Sessions share no mutable state, so separate sessions can analyze images
+ * on separate threads at the same time. A single session is not thread safe,
+ * except that extract() may run on one other thread while the regions are
+ * used.
+ */
+public class AnalysisSession {
+
+	private RegionManager regionMgr;
+	private Extractor extractor;
+	private AnalysisResult result;
+	//null if only FOREGROUND pixels are foreground
+	private Binarizer binarizer;
+	//null if results are not cached
+	private AnalysisCache cache;
+	
+	private double huTresholds[];
+	private float orientationTreshold;
+	private float eccentricityThreshold;
+
+	public AnalysisSession() {
+		this(new RegionManager(), 1);
+	}
+
+	public AnalysisSession(final RegionManager regionMgr, final int parallelism) {
+		this.regionMgr = regionMgr;
+		extractor = new Extractor(parallelism);
+		
+		orientationTreshold = 10;
+		
+		huTresholds = new double[5];
+		huTresholds[0] = 0.04	;
+		huTresholds[1] = 0.004;
+		huTresholds[2] = 0.009;
+		huTresholds[3] = 0.004;
+		huTresholds[4] = 0.00001;
+		
+		eccentricityThreshold = 0.05f;
+	}
+
+	public AnalysisResult analyze(final BufferedImage image) {
+		return setResult(extract(image, null));
+	}
+
+	/**
+	 * Analyzes the image without changing the regions of the session, for
+	 * analyses on a background thread. Only one extraction may run at a time.
+	 */
+	public AnalysisResult extract(final BufferedImage image, final AnalysisMonitor monitor) {
+		PixelSource source = binarizer != null ? binarizer.binarize(image) : PixelSource.of(image);
+		return extract(source, monitor);
+	}
+
+	//a cached result is returned without reporting its regions
+	private AnalysisResult extract(final PixelSource source, final AnalysisMonitor monitor) {
+		if (cache == null) {
+			return extractor.analyze(source, monitor);
+		}
+		String key = cache.getKey(source, extractor);
+		AnalysisResult cached = cache.get(key);
+		if (cached != null) {
+			if (monitor != null) {
+				monitor.onProgress(1);
+			}
+			return cached;
+		}
+		AnalysisResult extracted = extractor.analyze(source, monitor);
+		cache.put(key, extracted);
+		return extracted;
+	}
+
+	public AnalysisResult analyze(final int pixels[], final int width, final int height) {
+		return setResult(extract(PixelSource.of(pixels, width, height), null));
+	}
+
+	public AnalysisResult analyze(final PixelSource source) {
+		return setResult(extract(source, null));
+	}
+
+	//removes all regions, until the next result only added regions are known
+	public void clear() {
+		result = null;
+		regionMgr.clear();
+	}
+
+	//adds a region of a running analysis
+	public void addRegion(final Region region) {
+		regionMgr.addRegion(region);
+	}
+
+	//replaces the regions of the session by the regions of the result
+	public AnalysisResult setResult(final AnalysisResult result) {
+		this.result = result;
+		regionMgr.clear();
+		for (Region region : result.getRegions()) {
+			regionMgr.addRegion(region);
+		}
+		return result;
+	}
+
+	//id of the region at the position, -1 if there is none
+	public int getRegionAt(final int xPos, final int yPos) {
+		int id = -1;
+		
+		//look up the region in the label map
+		if (result != null) {
+			id = result.getRegionID(xPos, yPos);
+			if (!regionMgr.hasRegion(id)) {
+				id = -1;
+			}
+		} else {
+			//only the regions added so far
+			Iterator<Integer> idIt = regionMgr.getRegionIDs();
+			while (idIt.hasNext()) {
+				Region region = regionMgr.getRegion(idIt.next());
+				RegionRuns runs = region.getRuns();
+				if (runs != null && runs.contains(xPos, yPos)) {
+					return region.getID();
+				}
+			}
+		}
+		return id;
+	}
+
+	//ids of all regions whose bounding box intersects the rectangle
+	public List<Integer> getRegionsIn(final Rectangle rect) {
+		List<Integer> regionIDs = new ArrayList<Integer>();
+		if (result != null) {
+			int ids[] = result.getRegionIDsIn(rect.x, rect.y, rect.width, rect.height);
+			for (int i = 0; i < ids.length; ++i) {
+				if (regionMgr.hasRegion(ids[i])) {
+					regionIDs.add(ids[i]);
+				}
+			}
+		} else {
+			//only the regions added so far
+			Iterator<Integer> idIt = regionMgr.getRegionIDs();
+			while (idIt.hasNext()) {
+				Region region = regionMgr.getRegion(idIt.next());
+				BoundingBox bBox = region.getBoundingBox();
+				if (bBox != null && rect.intersects(bBox.getX(), bBox.getY(), bBox.getWidth() + 1, bBox.getHeight() + 1)) {
+					regionIDs.add(region.getID());
+				}
+			}
+		}
+		return regionIDs;
+	}
+
+	//ids of all other regions whose orientation, eccentricity and Hu moments are within the thresholds
+	public List<Integer> findSimilarRegions(final int regionID) {
+		List<Integer> similarRegions = new ArrayList<Integer>();
+
+		if(regionMgr.hasRegion(regionID)){
+			double features[] = new double[SimilarityIndex.FEATURE_COUNT];
+			SimilarityIndex.getFeatures(regionMgr.getRegion(regionID), features, 0);
+			
+			for(int id : findSimilarRegions(features)){
+				if(id != regionID){
+					similarRegions.add(id);
+				}
+			}
+		} else {
+			System.err.println("No region with id " + regionID + " found.");
+		}
+		
+		return similarRegions;
+	}
+
+	/**
+	 * Search for the regions similar to a region that follows threshold
+	 * changes incrementally, null if there is no such region. The search
+	 * does not follow later threshold changes of the session by itself.
+	 */
+	public SimilaritySearch createSimilaritySearch(final int regionID) {
+		if (result == null || !regionMgr.hasRegion(regionID)) {
+			return null;
+		}
+		RegionTable table = result.getRegionTable();
+		int candidates[] = new int[table.size()];
+		double features[] = new double[table.size() * SimilarityIndex.FEATURE_COUNT];
+		int count = collectFeatures(regionID, candidates, features);
+		double reference[] = new double[SimilarityIndex.FEATURE_COUNT];
+		SimilarityIndex.getFeatures(regionMgr.getRegion(regionID), reference, 0);
+		return new SimilaritySearch(Arrays.copyOf(candidates, count), features, reference, getTolerances());
+	}
+
+	/**
+	 * Groups all regions into clusters of regions that are similar under
+	 * the current thresholds, null if no image was analyzed.
+	 */
+	public RegionClustering clusterRegions() {
+		if (result == null) {
+			return null;
+		}
+		RegionTable table = result.getRegionTable();
+		int regionIDs[] = new int[table.size()];
+		double features[] = new double[table.size() * SimilarityIndex.FEATURE_COUNT];
+		int count = collectFeatures(-1, regionIDs, features);
+		return new RegionClustering(Arrays.copyOf(regionIDs, count), features, getTolerances());
+	}
+
+	//ids and feature vectors of the regions except the excluded one, returns their number
+	private int collectFeatures(final int excludedID, final int regionIDs[], final double features[]) {
+		RegionTable table = result.getRegionTable();
+		table.computeMomentFeatures();
+		int count = 0;
+		for (int row = 0; row < table.size(); ++row) {
+			int id = table.getID(row);
+			if (id != excludedID && regionMgr.hasRegion(id)) {
+				SimilarityIndex.getFeatures(table.getRegion(row), features, count * SimilarityIndex.FEATURE_COUNT);
+				regionIDs[count++] = id;
+			}
+		}
+		return count;
+	}
+
+	//threshold per feature of SimilarityIndex.getFeatures()
+	public double[] getTolerances() {
+		double tolerances[] = new double[SimilarityIndex.FEATURE_COUNT];
+		tolerances[0] = orientationTreshold;
+		tolerances[1] = eccentricityThreshold;
+		for(int num=1;num<=5;++num){
+			tolerances[num+1] = huTresholds[num-1];
+		}
+		return tolerances;
+	}
+
+	/**
+	 * Ids of all regions whose features (orientation, eccentricity, hu1..hu5)
+	 * differ from the given ones by less than the thresholds.
+	 */
+	public List<Integer> findSimilarRegions(final double features[]) {
+		List<Integer> similarRegions = new ArrayList<Integer>();
+		if (result == null) {
+			return similarRegions;
+		}
+
+		double lower[] = new double[SimilarityIndex.FEATURE_COUNT];
+		double upper[] = new double[SimilarityIndex.FEATURE_COUNT];
+		lower[0] = features[0] - orientationTreshold;
+		upper[0] = features[0] + orientationTreshold;
+		lower[1] = features[1] - eccentricityThreshold;
+		upper[1] = features[1] + eccentricityThreshold;
+		for(int num=1;num<=5;++num){
+			lower[num+1] = features[num+1] - huTresholds[num-1];
+			upper[num+1] = features[num+1] + huTresholds[num-1];
+		}
+
+		int ids[] = result.getSimilarityIndex().query(lower, upper);
+		for (int i = 0; i < ids.length; ++i) {
+			if (regionMgr.hasRegion(ids[i])) {
+				similarRegions.add(ids[i]);
+			}
+		}
+		return similarRegions;
+	}
+
+	public AnalysisResult getResult() {
+		return result;
+	}
+
+	public RegionManager getRegionManager() {
+		return regionMgr;
+	}
+
+	public Extractor getExtractor() {
+		return extractor;
+	}
+
+	public AnalysisCache getCache() {
+		return cache;
+	}
+
+	//results are looked up in the cache before analyzing and stored after, null for no cache
+	public void setCache(AnalysisCache cache) {
+		this.cache = cache;
+	}
+
+	public Binarizer getBinarizer() {
+		return binarizer;
+	}
+
+	//images given to analyze(BufferedImage) are binarized first, null to disable
+	public void setBinarizer(Binarizer binarizer) {
+		this.binarizer = binarizer;
+	}
+
+	public FeatureSet getFeatureSet() {
+		return extractor.getFeatureSet();
+	}
+
+	//features that are not eager are computed when they are first read
+	public void setFeatureSet(FeatureSet featureSet) {
+		extractor.setFeatureSet(featureSet);
+	}
+	
+	public void setHuTreshold(int num, float value){
+		num -= 1;
+		if(num >= 0 && num < huTresholds.length){
+			huTresholds[num] = value;
+		}
+	}
+	
+	public double getHuTreshold(int num){
+		num -= 1;
+		if(num >= 0 && num < huTresholds.length){
+			return huTresholds[num];
+		}
+		
+		return 0;
+	}
+
+	public float getOrientationTreshold() {
+		return orientationTreshold;
+	}
+
+	public void setOrientationTreshold(float orientationTreshold) {
+		this.orientationTreshold = orientationTreshold;
+	}
+
+	public float getEccentricityThreshold() {
+		return eccentricityThreshold;
+	}
+
+	public void setEccentricityThreshold(float eccentricityThreshold) {
+		this.eccentricityThreshold = eccentricityThreshold;
+	}
+}
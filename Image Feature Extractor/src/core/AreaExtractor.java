@@ -0,0 +1,65 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+/**
+ * Built-in extractor of the area (pixel count) of a region.
+ */
+public class AreaExtractor implements FeatureExtractor {
+
+	public static final String NAME = "area";
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public Accumulator createAccumulator(final RegionTable table) {
+		return new Accumulator() {
+			private long area;
+
+			@Override
+			public void init() {
+				area = 0;
+			}
+
+			@Override
+			public void accept(final int xPos, final int yPos) {
+				++area;
+			}
+
+			@Override
+			public void acceptRun(final int xStart, final int xEnd, final int yPos) {
+				area += xEnd - xStart + 1;
+			}
+
+			@Override
+			public void finish(final int row) {
+				table.setArea(row, (int) area);
+			}
+		};
+	}
+}
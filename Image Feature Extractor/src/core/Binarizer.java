@@ -0,0 +1,228 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+
+/**
+ * Turns gray or color images into binary images, dark pixels become
+ * foreground.
+ *
+ * OTSU uses one global threshold from the histogram. SAUVOLA and NIBLACK
+ * compute a threshold per pixel from the mean and standard deviation of a
+ * window around it. The window sums come from integral images, so the cost
+ * per pixel does not depend on the window size. Binarizers are immutable.
+ */
+public class Binarizer {
+
+	public enum Method {
+		OTSU, SAUVOLA, NIBLACK
+	}
+
+	public static final int DEFAULT_WINDOW_SIZE = 31;
+	public static final double DEFAULT_SAUVOLA_K = 0.34;
+	public static final double DEFAULT_NIBLACK_K = -0.2;
+	//dynamic range of the standard deviation in Sauvola's formula
+	private static final double SAUVOLA_RANGE = 128;
+
+	private final Method method;
+	private final int windowSize;
+	private final double k;
+
+	public Binarizer(final Method method) {
+		this(method, DEFAULT_WINDOW_SIZE, method == Method.NIBLACK ? DEFAULT_NIBLACK_K : DEFAULT_SAUVOLA_K);
+	}
+
+	//the window size is only used by the local methods, k is Sauvola's or Niblack's factor
+	public Binarizer(final Method method, final int windowSize, final double k) {
+		if (windowSize < 1) throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+		this.method = method;
+		this.windowSize = windowSize;
+		this.k = k;
+	}
+
+	public BinaryImage binarize(final BufferedImage image) {
+		return binarize(getGray(image), image.getWidth(), image.getHeight());
+	}
+
+	//gray values 0..255, one byte per pixel in rows
+	public BinaryImage binarize(final byte gray[], final int width, final int height) {
+		if (gray == null || gray.length < width * height) throw new IndexOutOfBoundsException();
+
+		if (method == Method.OTSU) {
+			int histogram[] = new int[256];
+			for (int i = 0; i < width * height; ++i) {
+				++histogram[gray[i] & 0xFF];
+			}
+			int threshold = getOtsuThreshold(histogram);
+
+			BinaryImage binaryImage = new BinaryImage(width, height);
+			long words[] = binaryImage.getWords();
+			int wordsPerRow = binaryImage.getWordsPerRow();
+			for (int yPos = 0; yPos < height; ++yPos) {
+				for (int xPos = 0; xPos < width; ++xPos) {
+					if ((gray[yPos * width + xPos] & 0xFF) <= threshold) {
+						words[yPos * wordsPerRow + (xPos >>> 6)] |= 1L << xPos;
+					}
+				}
+			}
+			return binaryImage;
+		}
+		return binarizeLocal(gray, width, height);
+	}
+
+	private BinaryImage binarizeLocal(final byte gray[], final int width, final int height) {
+		//sums and sums of squares of all pixels above and left of a position
+		int stride = width + 1;
+		long sums[] = new long[stride * (height + 1)];
+		long squareSums[] = new long[stride * (height + 1)];
+		for (int yPos = 0; yPos < height; ++yPos) {
+			long rowSum = 0;
+			long rowSquareSum = 0;
+			for (int xPos = 0; xPos < width; ++xPos) {
+				int value = gray[yPos * width + xPos] & 0xFF;
+				rowSum += value;
+				rowSquareSum += value * value;
+				int index = (yPos + 1) * stride + xPos + 1;
+				sums[index] = sums[index - stride] + rowSum;
+				squareSums[index] = squareSums[index - stride] + rowSquareSum;
+			}
+		}
+
+		BinaryImage binaryImage = new BinaryImage(width, height);
+		long words[] = binaryImage.getWords();
+		int wordsPerRow = binaryImage.getWordsPerRow();
+		int half = windowSize / 2;
+
+		for (int yPos = 0; yPos < height; ++yPos) {
+			//window rows, clipped at the image border
+			int top = Math.max(0, yPos - half) * stride;
+			int bottom = (Math.min(height - 1, yPos + half) + 1) * stride;
+			int rows = (bottom - top) / stride;
+
+			for (int xPos = 0; xPos < width; ++xPos) {
+				int left = Math.max(0, xPos - half);
+				int right = Math.min(width - 1, xPos + half) + 1;
+				double count = rows * (right - left);
+
+				long sum = sums[bottom + right] - sums[bottom + left] - sums[top + right] + sums[top + left];
+				long squareSum = squareSums[bottom + right] - squareSums[bottom + left]
+						- squareSums[top + right] + squareSums[top + left];
+				double mean = sum / count;
+				double deviation = Math.sqrt(Math.max(0, squareSum / count - mean * mean));
+
+				double threshold = method == Method.SAUVOLA
+						? mean * (1 + k * (deviation / SAUVOLA_RANGE - 1))
+						: mean + k * deviation;
+				if ((gray[yPos * width + xPos] & 0xFF) < threshold) {
+					words[yPos * wordsPerRow + (xPos >>> 6)] |= 1L << xPos;
+				}
+			}
+		}
+		return binaryImage;
+	}
+
+	/**
+	 * Otsu's threshold of a 256 bin histogram: the gray value t that maximizes
+	 * the variance between the classes <= t and > t. Returns -1 if the
+	 * histogram has less than two gray values.
+	 */
+	public static int getOtsuThreshold(final int histogram[]) {
+		long total = 0;
+		long weightedTotal = 0;
+		for (int value = 0; value < histogram.length; ++value) {
+			total += histogram[value];
+			weightedTotal += (long) value * histogram[value];
+		}
+
+		int threshold = -1;
+		double maxVariance = 0;
+		long darkCount = 0;
+		long darkSum = 0;
+		for (int value = 0; value < histogram.length - 1; ++value) {
+			darkCount += histogram[value];
+			darkSum += (long) value * histogram[value];
+			long brightCount = total - darkCount;
+			if (darkCount == 0) {
+				continue;
+			}
+			if (brightCount == 0) {
+				break;
+			}
+
+			double meanDifference = (double) darkSum / darkCount - (double) (weightedTotal - darkSum) / brightCount;
+			double variance = (double) darkCount * brightCount * meanDifference * meanDifference;
+			if (variance > maxVariance) {
+				maxVariance = variance;
+				threshold = value;
+			}
+		}
+		return threshold;
+	}
+
+	//luminance 0..255 of every pixel, transparent pixels are blended with white
+	public static byte[] getGray(final BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		byte gray[] = new byte[width * height];
+
+		if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+			Raster raster = image.getRaster();
+			int row[] = new int[width];
+			for (int yPos = 0; yPos < height; ++yPos) {
+				raster.getSamples(0, yPos, width, 1, 0, row);
+				for (int xPos = 0; xPos < width; ++xPos) {
+					gray[yPos * width + xPos] = (byte) row[xPos];
+				}
+			}
+			return gray;
+		}
+
+		int row[] = new int[width];
+		for (int yPos = 0; yPos < height; ++yPos) {
+			image.getRGB(0, yPos, width, 1, row, 0, width);
+			for (int xPos = 0; xPos < width; ++xPos) {
+				int argb = row[xPos];
+				int alpha = argb >>> 24;
+				int luminance = (77 * ((argb >> 16) & 0xFF) + 150 * ((argb >> 8) & 0xFF) + 29 * (argb & 0xFF)) >> 8;
+				gray[yPos * width + xPos] = (byte) ((luminance * alpha + 255 * (255 - alpha)) / 255);
+			}
+		}
+		return gray;
+	}
+
+	public Method getMethod() {
+		return method;
+	}
+
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	public double getK() {
+		return k;
+	}
+}
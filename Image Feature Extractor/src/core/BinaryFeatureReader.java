@@ -0,0 +1,181 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Memory-mapped reader of the binary feature files written by
+ * BinaryFeatureWriter. The columns are views of the mapping, nothing is
+ * copied or parsed except the header.
+ *
+ * The file is little endian: magic, version, row count and column count,
+ * a directory with type, name length and data offset per column, the UTF-8
+ * column names, and one block of primitive values per column. Every block
+ * starts at a multiple of 8 bytes.
+ */
+public class BinaryFeatureReader {
+
+	public enum Type {
+		INT(4), FLOAT(4), DOUBLE(8);
+
+		private final int size;
+
+		private Type(final int size) {
+			this.size = size;
+		}
+
+		//bytes per value
+		public int getSize() {
+			return size;
+		}
+	}
+
+	//"RFCB" read as little endian int
+	static final int MAGIC = 0x42434652;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+	//type, name length and data offset
+	static final int DIRECTORY_ENTRY_SIZE = 16;
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final ByteBuffer buffer;
+	private final int rowCount;
+	private final String names[];
+	private final Type types[];
+	private final int offsets[];
+
+	private BinaryFeatureReader(final ByteBuffer buffer) throws IOException {
+		this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a binary feature file");
+		}
+		if (buffer.getInt(4) != VERSION) throw new IOException("Unsupported binary feature file version " + buffer.getInt(4));
+		rowCount = buffer.getInt(8);
+		int columnCount = buffer.getInt(12);
+		long namesStart = HEADER_SIZE + (long) columnCount * DIRECTORY_ENTRY_SIZE;
+		if (rowCount < 0 || columnCount < 0 || namesStart > buffer.capacity()) {
+			throw new IOException("Truncated binary feature file");
+		}
+
+		names = new String[columnCount];
+		types = new Type[columnCount];
+		offsets = new int[columnCount];
+		int nameOffset = (int) namesStart;
+		for (int column = 0; column < columnCount; ++column) {
+			int entry = HEADER_SIZE + column * DIRECTORY_ENTRY_SIZE;
+			int type = buffer.getInt(entry);
+			int nameLength = buffer.getInt(entry + 4);
+			long offset = buffer.getLong(entry + 8);
+			if (type < 0 || type >= Type.values().length) throw new IOException("Unknown column type " + type);
+			types[column] = Type.values()[type];
+			if (nameLength < 0 || (long) nameOffset + nameLength > buffer.capacity()
+					|| offset < 0 || offset + (long) rowCount * types[column].getSize() > buffer.capacity()) {
+				throw new IOException("Truncated binary feature file");
+			}
+			names[column] = UTF8.decode(slice(nameOffset, nameLength)).toString();
+			nameOffset += nameLength;
+			offsets[column] = (int) offset;
+		}
+	}
+
+	public static BinaryFeatureReader open(final File file) throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = input.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) throw new IOException("Binary feature file too large: " + file);
+			//the mapping stays valid after the file is closed
+			return new BinaryFeatureReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			input.close();
+		}
+	}
+
+	private ByteBuffer slice(final int offset, final int length) {
+		ByteBuffer slice = buffer.duplicate();
+		slice.position(offset);
+		slice.limit(offset + length);
+		return slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public int getColumnCount() {
+		return names.length;
+	}
+
+	public String getColumnName(final int column) {
+		return names[column];
+	}
+
+	public Type getColumnType(final int column) {
+		return types[column];
+	}
+
+	//-1 if there is no such column
+	public int getColumnIndex(final String name) {
+		for (int column = 0; column < names.length; ++column) {
+			if (names[column].equals(name)) {
+				return column;
+			}
+		}
+		return -1;
+	}
+
+	//the values of the column, each call returns a new view
+	public ByteBuffer getColumn(final int column) {
+		return slice(offsets[column], rowCount * types[column].getSize());
+	}
+
+	public IntBuffer getIntColumn(final String name) {
+		return getColumn(getColumnIndex(name, Type.INT)).asIntBuffer();
+	}
+
+	public FloatBuffer getFloatColumn(final String name) {
+		return getColumn(getColumnIndex(name, Type.FLOAT)).asFloatBuffer();
+	}
+
+	public DoubleBuffer getDoubleColumn(final String name) {
+		return getColumn(getColumnIndex(name, Type.DOUBLE)).asDoubleBuffer();
+	}
+
+	private int getColumnIndex(final String name, final Type type) {
+		int column = getColumnIndex(name);
+		if (column == -1) throw new IllegalArgumentException("No column " + name);
+		if (types[column] != type) throw new IllegalArgumentException("Column " + name + " is of type " + types[column]);
+		return column;
+	}
+}
@@ -0,0 +1,144 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import core.BinaryFeatureReader.Type;
+
+/**
+ * Writes the features of all regions as a binary file with one block of
+ * little endian primitive values per column, see BinaryFeatureReader for
+ * the layout. The columns are those of the FeatureWriter, followed by the
+ * columns added by feature extractors.
+ */
+public class BinaryFeatureWriter {
+
+	//types of the columns of FeatureWriter.HEADER
+	private static final Type BUILT_IN_TYPES[] = {
+		Type.INT, Type.INT, Type.INT, Type.INT, Type.INT, Type.FLOAT, Type.INT, Type.INT,
+		Type.DOUBLE, Type.DOUBLE, Type.DOUBLE, Type.DOUBLE, Type.DOUBLE, Type.DOUBLE, Type.DOUBLE
+	};
+
+	private BinaryFeatureWriter() {
+	}
+
+	public static void write(final AnalysisResult result, final File file) throws IOException {
+		write(result.getRegionTable(), file);
+	}
+
+	public static void write(final RegionTable table, final File file) throws IOException {
+		FileChannel channel = new FileOutputStream(file).getChannel();
+		try {
+			write(table, new ChannelOutput(channel));
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static void write(final RegionTable table, final ChannelOutput out) throws IOException {
+		table.computeMomentFeatures();
+		int rows = table.size();
+		String builtIn[] = FeatureWriter.HEADER.split(",");
+		int extraColumns = table.getColumnCount();
+		int columnCount = builtIn.length + extraColumns;
+
+		String names[] = new String[columnCount];
+		Type types[] = new Type[columnCount];
+		for (int column = 0; column < builtIn.length; ++column) {
+			names[column] = builtIn[column];
+			types[column] = BUILT_IN_TYPES[column];
+		}
+		for (int column = 0; column < extraColumns; ++column) {
+			names[builtIn.length + column] = table.getColumnName(column);
+			types[builtIn.length + column] = Type.DOUBLE;
+		}
+
+		//header and directory, the blocks follow the names at multiples of 8
+		byte nameBytes[][] = new byte[columnCount][];
+		long offset = BinaryFeatureReader.HEADER_SIZE + (long) columnCount * BinaryFeatureReader.DIRECTORY_ENTRY_SIZE;
+		for (int column = 0; column < columnCount; ++column) {
+			nameBytes[column] = names[column].getBytes(BinaryFeatureReader.UTF8);
+			offset += nameBytes[column].length;
+		}
+		out.putInt(BinaryFeatureReader.MAGIC);
+		out.putInt(BinaryFeatureReader.VERSION);
+		out.putInt(rows);
+		out.putInt(columnCount);
+		for (int column = 0; column < columnCount; ++column) {
+			offset = align(offset);
+			out.putInt(types[column].ordinal());
+			out.putInt(nameBytes[column].length);
+			out.putLong(offset);
+			offset += (long) rows * types[column].getSize();
+		}
+		if (offset > Integer.MAX_VALUE) throw new IOException("Too many regions for a binary feature file: " + rows);
+		for (int column = 0; column < columnCount; ++column) {
+			out.putBytes(nameBytes[column], nameBytes[column].length);
+		}
+
+		putBlock(out, table.getIDs(), rows);
+		putBlock(out, table.getBoxX(), rows);
+		putBlock(out, table.getBoxY(), rows);
+		putBlock(out, table.getBoxWidth(), rows);
+		putBlock(out, table.getBoxHeight(), rows);
+		putBlock(out, table.getArea(), rows);
+		putBlock(out, table.getCentroidX(), rows);
+		putBlock(out, table.getCentroidY(), rows);
+		putBlock(out, table.getOrientationAngle(), 0, 1, rows);
+		putBlock(out, table.getEccentricity(), 0, 1, rows);
+		for (int num = 0; num < RegionTable.HU_MOMENT_COUNT; ++num) {
+			putBlock(out, table.getHuMoments(), num, RegionTable.HU_MOMENT_COUNT, rows);
+		}
+		for (int column = 0; column < extraColumns; ++column) {
+			putBlock(out, table.getColumn(column), 0, 1, rows);
+		}
+		out.flush();
+	}
+
+	//every block starts at a multiple of 8 bytes
+	private static void putBlock(final ChannelOutput out, final int values[], final int rows) throws IOException {
+		out.pad(8);
+		out.putInts(values, 0, rows);
+	}
+
+	private static void putBlock(final ChannelOutput out, final float values[], final int rows) throws IOException {
+		out.pad(8);
+		out.putFloats(values, rows);
+	}
+
+	private static void putBlock(final ChannelOutput out, final double values[], final int start, final int stride,
+			final int rows) throws IOException {
+		out.pad(8);
+		out.putDoubles(values, start, stride, rows);
+	}
+
+	private static long align(final long offset) {
+		return (offset + 7) & ~7L;
+	}
+}
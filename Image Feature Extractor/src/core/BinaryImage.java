@@ -0,0 +1,226 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Binary image with one bit per pixel. Each row is stored in
+ * getWordsPerRow() longs, pixel x of a row is bit (x & 63) of word x >> 6.
+ * Bits beyond the width are always zero.
+ */
+public class BinaryImage extends PixelSource {
+
+	private final int wordsPerRow;
+	private final long words[];
+
+	public BinaryImage(final int width, final int height) {
+		super(width, height);
+		wordsPerRow = getWordCount(width);
+		words = new long[wordsPerRow * height];
+	}
+
+	//copies the foreground of a pixel source
+	public static BinaryImage of(final PixelSource source) {
+		BinaryImage image = new BinaryImage(source.getWidth(), source.getHeight());
+		long row[] = new long[image.wordsPerRow];
+		for (int yPos = 0; yPos < image.height; ++yPos) {
+			source.getForegroundBits(yPos, row);
+			System.arraycopy(row, 0, image.words, yPos * image.wordsPerRow, image.wordsPerRow);
+		}
+		return image;
+	}
+
+	//number of longs that hold a row of the given width
+	public static int getWordCount(final int width) {
+		return (width + 63) >>> 6;
+	}
+
+	public int getWordsPerRow() {
+		return wordsPerRow;
+	}
+
+	//the backing array, row y starts at y * getWordsPerRow()
+	public long[] getWords() {
+		return words;
+	}
+
+	public boolean get(final int xPos, final int yPos) {
+		return (words[yPos * wordsPerRow + (xPos >>> 6)] & (1L << xPos)) != 0;
+	}
+
+	public void set(final int xPos, final int yPos, final boolean isForeground) {
+		int index = yPos * wordsPerRow + (xPos >>> 6);
+		if (isForeground) {
+			words[index] |= 1L << xPos;
+		} else {
+			words[index] &= ~(1L << xPos);
+		}
+	}
+
+	public void getForegroundRow(final int yPos, final byte dest[]) {
+		Arrays.fill(dest, 0, width, (byte) 0);
+		int rowStart = yPos * wordsPerRow;
+		for (int word = 0; word < wordsPerRow; ++word) {
+			long bits = words[rowStart + word];
+			while (bits != 0) {
+				dest[(word << 6) + Long.numberOfTrailingZeros(bits)] = 1;
+				bits &= bits - 1;
+			}
+		}
+	}
+
+	public void getForegroundBits(final int yPos, final long dest[]) {
+		System.arraycopy(words, yPos * wordsPerRow, dest, 0, wordsPerRow);
+	}
+
+	/**
+	 * First foreground position >= from in a row of the given width, or width
+	 * if there is none. Blank words are skipped at once.
+	 */
+	public static int nextSetBit(final long row[], final int offset, final int width, final int from) {
+		if (from >= width) {
+			return width;
+		}
+		int word = from >>> 6;
+		int wordCount = getWordCount(width);
+		long bits = row[offset + word] & (-1L << from);
+		while (bits == 0) {
+			if (++word == wordCount) {
+				return width;
+			}
+			bits = row[offset + word];
+		}
+		return (word << 6) + Long.numberOfTrailingZeros(bits);
+	}
+
+	//first background position >= from in a row of the given width, or width if there is none
+	public static int nextClearBit(final long row[], final int offset, final int width, final int from) {
+		if (from >= width) {
+			return width;
+		}
+		int word = from >>> 6;
+		int wordCount = getWordCount(width);
+		long bits = ~row[offset + word] & (-1L << from);
+		while (bits == 0) {
+			if (++word == wordCount) {
+				return width;
+			}
+			bits = ~row[offset + word];
+		}
+		return Math.min(width, (word << 6) + Long.numberOfTrailingZeros(bits));
+	}
+
+	//number of foreground pixels per row
+	public int[] getRowProjection() {
+		int projection[] = new int[height];
+		for (int yPos = 0; yPos < height; ++yPos) {
+			int rowStart = yPos * wordsPerRow;
+			int count = 0;
+			for (int word = 0; word < wordsPerRow; ++word) {
+				count += Long.bitCount(words[rowStart + word]);
+			}
+			projection[yPos] = count;
+		}
+		return projection;
+	}
+
+	//number of foreground pixels per column
+	public int[] getColumnProjection() {
+		int projection[] = new int[width];
+		for (int index = 0; index < words.length; ++index) {
+			long bits = words[index];
+			int base = (index % wordsPerRow) << 6;
+			while (bits != 0) {
+				++projection[base + Long.numberOfTrailingZeros(bits)];
+				bits &= bits - 1;
+			}
+		}
+		return projection;
+	}
+
+	//dilation with a 3x3 square, pixels outside the image are background
+	public BinaryImage dilate() {
+		BinaryImage result = new BinaryImage(width, height);
+		long spread[] = new long[words.length];
+		for (int yPos = 0; yPos < height; ++yPos) {
+			spreadRow(yPos * wordsPerRow, spread, false);
+		}
+		for (int yPos = 0; yPos < height; ++yPos) {
+			int rowStart = yPos * wordsPerRow;
+			for (int word = 0; word < wordsPerRow; ++word) {
+				long bits = spread[rowStart + word];
+				if (yPos > 0) {
+					bits |= spread[rowStart - wordsPerRow + word];
+				}
+				if (yPos < height - 1) {
+					bits |= spread[rowStart + wordsPerRow + word];
+				}
+				result.words[rowStart + word] = bits;
+			}
+		}
+		return result;
+	}
+
+	//erosion with a 3x3 square, pixels outside the image are background
+	public BinaryImage erode() {
+		BinaryImage result = new BinaryImage(width, height);
+		long spread[] = new long[words.length];
+		for (int yPos = 0; yPos < height; ++yPos) {
+			spreadRow(yPos * wordsPerRow, spread, true);
+		}
+		for (int yPos = 1; yPos < height - 1; ++yPos) {
+			int rowStart = yPos * wordsPerRow;
+			for (int word = 0; word < wordsPerRow; ++word) {
+				result.words[rowStart + word] = spread[rowStart + word]
+						& spread[rowStart - wordsPerRow + word]
+						& spread[rowStart + wordsPerRow + word];
+			}
+		}
+		return result;
+	}
+
+	//combines each pixel of a row with its left and right neighbor by or (and if erode)
+	private void spreadRow(final int rowStart, final long dest[], final boolean erode) {
+		if (wordsPerRow == 0) {
+			return;
+		}
+		for (int word = 0; word < wordsPerRow; ++word) {
+			long bits = words[rowStart + word];
+			long previous = word > 0 ? words[rowStart + word - 1] : 0;
+			long next = word < wordsPerRow - 1 ? words[rowStart + word + 1] : 0;
+			//left neighbors shifted in from below, right neighbors from above
+			long left = (bits << 1) | (previous >>> 63);
+			long right = (bits >>> 1) | (next << 63);
+			dest[rowStart + word] = erode ? bits & left & right : bits | left | right;
+		}
+		dest[rowStart + wordsPerRow - 1] &= getLastWordMask();
+	}
+
+	private long getLastWordMask() {
+		int usedBits = width & 63;
+		return usedBits == 0 ? -1L : (1L << usedBits) - 1;
+	}
+}
@@ -0,0 +1,74 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+/**
+ * Built-in extractor of the bounding box of a region.
+ */
+public class BoundingBoxExtractor implements FeatureExtractor {
+
+	public static final String NAME = "boundingBox";
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public Accumulator createAccumulator(final RegionTable table) {
+		return new Accumulator() {
+			private int leftBound;
+			private int rightBound;
+			private int upperBound;
+			private int lowerBound;
+
+			@Override
+			public void init() {
+				leftBound = Integer.MAX_VALUE;
+				rightBound = Integer.MIN_VALUE;
+				upperBound = Integer.MAX_VALUE;
+				lowerBound = Integer.MIN_VALUE;
+			}
+
+			@Override
+			public void accept(final int xPos, final int yPos) {
+				acceptRun(xPos, xPos, yPos);
+			}
+
+			@Override
+			public void acceptRun(final int xStart, final int xEnd, final int yPos) {
+				leftBound = Math.min(leftBound, xStart);
+				rightBound = Math.max(rightBound, xEnd);
+				upperBound = Math.min(upperBound, yPos);
+				lowerBound = Math.max(lowerBound, yPos);
+			}
+
+			@Override
+			public void finish(final int row) {
+				table.setBoundingBox(row, leftBound, upperBound, rightBound - leftBound, lowerBound - upperBound);
+			}
+		};
+	}
+}
@@ -0,0 +1,144 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Little endian output to a file channel through a direct buffer. Keeps
+ * the CRC32 of all bytes written.
+ */
+class ChannelOutput {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final CRC32 checksum;
+	//bytes written to the channel
+	private long position;
+
+	ChannelOutput(final FileChannel channel) {
+		this.channel = channel;
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		checksum = new CRC32();
+	}
+
+	long getPosition() {
+		return position + buffer.position();
+	}
+
+	//CRC32 of all bytes so far
+	int getChecksum() throws IOException {
+		flush();
+		return (int) checksum.getValue();
+	}
+
+	void putInt(final int value) throws IOException {
+		ensure(4);
+		buffer.putInt(value);
+	}
+
+	void putLong(final long value) throws IOException {
+		ensure(8);
+		buffer.putLong(value);
+	}
+
+	//pads with zeros to a multiple of the alignment
+	void pad(final int alignment) throws IOException {
+		long end = getPosition();
+		long aligned = (end + alignment - 1) / alignment * alignment;
+		ensure(alignment);
+		for (long i = end; i < aligned; ++i) {
+			buffer.put((byte) 0);
+		}
+	}
+
+	void putBytes(final byte values[], final int count) throws IOException {
+		for (int offset = 0; offset < count;) {
+			ensure(1);
+			int n = Math.min(count - offset, buffer.remaining());
+			buffer.put(values, offset, n);
+			offset += n;
+		}
+	}
+
+	void putInts(final int values[], final int start, final int count) throws IOException {
+		for (int offset = 0; offset < count;) {
+			ensure(4);
+			int n = Math.min(count - offset, buffer.remaining() / 4);
+			buffer.asIntBuffer().put(values, start + offset, n);
+			buffer.position(buffer.position() + n * 4);
+			offset += n;
+		}
+	}
+
+	void putFloats(final float values[], final int count) throws IOException {
+		for (int offset = 0; offset < count;) {
+			ensure(4);
+			int n = Math.min(count - offset, buffer.remaining() / 4);
+			buffer.asFloatBuffer().put(values, offset, n);
+			buffer.position(buffer.position() + n * 4);
+			offset += n;
+		}
+	}
+
+	//every stride-th value from start on
+	void putDoubles(final double values[], final int start, final int stride, final int count) throws IOException {
+		for (int offset = 0; offset < count;) {
+			ensure(8);
+			int n = Math.min(count - offset, buffer.remaining() / 8);
+			if (stride == 1) {
+				buffer.asDoubleBuffer().put(values, start + offset, n);
+				buffer.position(buffer.position() + n * 8);
+			} else {
+				for (int i = 0; i < n; ++i) {
+					buffer.putDouble(values[start + (offset + i) * stride]);
+				}
+			}
+			offset += n;
+		}
+	}
+
+	//makes room for at least the given number of bytes
+	private void ensure(final int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush();
+		}
+	}
+
+	void flush() throws IOException {
+		buffer.flip();
+		checksum.update(buffer.duplicate());
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,70 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+/**
+ * Raw moments of a region from its contours with the discrete form of
+ * Green's theorem.
+ *
+ * A contour edge going south ends a run of region pixels on its left, an
+ * edge going north starts one on its right. Summing the row prefix sums
+ * of those edges with opposite signs gives the sums over all pixels, so the
+ * cost depends on the perimeter and not on the area. The moments are exact
+ * and equal to summing the pixels. Each run has one edge of either kind, so
+ * summing the runs directly is cheaper whenever they are available.
+ */
+public class ContourMoments {
+
+	private ContourMoments() {
+	}
+
+	//moments relative to the first pixel of the region in raster order, the start of the outer contour
+	public static MomentAccumulator compute(final RegionContours contours) {
+		if (contours.getContourCount() == 0) {
+			return new MomentAccumulator(0, 0);
+		}
+		MomentAccumulator moments = new MomentAccumulator(contours.getStartX(0), contours.getStartY(0));
+
+		for (int contour = 0; contour < contours.getContourCount(); ++contour) {
+			int xPos = contours.getStartX(contour);
+			int yPos = contours.getStartY(contour);
+			int length = contours.getLength(contour);
+
+			for (int step = 0; step < length; ++step) {
+				int direction = contours.getCode(contour, step);
+				if (direction == RegionContours.SOUTH) {
+					//pixel xPos - 1 of row yPos is the last one of a run
+					moments.addRowPrefix(xPos - 1, yPos, 1);
+				} else if (direction == RegionContours.NORTH) {
+					//pixel xPos of row yPos - 1 is the first one of a run
+					moments.addRowPrefix(xPos - 1, yPos - 1, -1);
+				}
+				xPos += RegionContours.STEP_X[direction];
+				yPos += RegionContours.STEP_Y[direction];
+			}
+		}
+		return moments;
+	}
+}
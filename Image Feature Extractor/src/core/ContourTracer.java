@@ -0,0 +1,229 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Traces the outer and inner contours of all regions in one pass over a
+ * label map.
+ *
+ * Every closed contour contains at least one top edge of a region pixel,
+ * and contours cross top edges only from west to east. The map is scanned
+ * in raster order and a contour is traced from every top edge that no
+ * earlier contour crossed. The first contour found for a region is its
+ * outer contour. Each pixel edge is visited at most twice, so the cost is
+ * linear in the image size.
+ */
+public class ContourTracer {
+
+	//top edges crossed by a traced contour, one bit per pixel of the traced area
+	private long visited[];
+	private int visitedX;
+	private int visitedY;
+	private int visitedWidth;
+
+	private long codes[];
+	private int codeCount;
+	//region, startX, startY, length and code offset per contour
+	private int contours[];
+	private int contourCount;
+
+	public ContourTracer() {
+		visited = new long[0];
+	}
+
+	/**
+	 * Traces the regions of a label map that stores region id + 1 per pixel
+	 * and 0 for background. Returns the contours indexed by region id.
+	 */
+	public RegionContours[] trace(final int labels[], final int width, final int height, final int regionCount) {
+		reset(0, 0, width, height);
+
+		for (int yPos = 0; yPos < height; ++yPos) {
+			int rowStart = yPos * width;
+			for (int xPos = 0; xPos < width; ++xPos) {
+				int label = labels[rowStart + xPos];
+				if (label == 0 || (yPos > 0 && labels[rowStart - width + xPos] == label)) {
+					continue;
+				}
+				int pixelIndex = rowStart + xPos;
+				if ((visited[pixelIndex >>> 6] & (1L << pixelIndex)) == 0) {
+					traceContour(labels, width, height, label, xPos, yPos);
+				}
+			}
+		}
+
+		return groupByRegion(regionCount);
+	}
+
+	/**
+	 * Traces the contours of one region of a label map. Only the pixels of
+	 * its bounding box xPos..xPos+boxWidth, yPos..yPos+boxHeight (inclusive)
+	 * are scanned.
+	 */
+	public RegionContours traceRegion(final int labels[], final int width, final int height, final int label,
+			final int xPos, final int yPos, final int boxWidth, final int boxHeight) {
+		reset(xPos, yPos, boxWidth + 1, boxHeight + 1);
+
+		for (int row = yPos; row <= yPos + boxHeight; ++row) {
+			int rowStart = row * width;
+			for (int column = xPos; column <= xPos + boxWidth; ++column) {
+				if (labels[rowStart + column] != label || (row > 0 && labels[rowStart - width + column] == label)) {
+					continue;
+				}
+				int pixelIndex = (row - yPos) * visitedWidth + column - xPos;
+				if ((visited[pixelIndex >>> 6] & (1L << pixelIndex)) == 0) {
+					traceContour(labels, width, height, label, column, row);
+				}
+			}
+		}
+
+		//all contours belong to the region, drop the region field of the records
+		int records[] = new int[contourCount * RegionContours.RECORD_SIZE];
+		for (int contour = 0; contour < contourCount; ++contour) {
+			System.arraycopy(contours, contour * 5 + 1, records, contour * RegionContours.RECORD_SIZE, RegionContours.RECORD_SIZE);
+		}
+		RegionContours result = new RegionContours(Arrays.copyOf(codes, (codeCount + 31) >>> 5), records, 0, contourCount);
+		codes = null;
+		contours = null;
+		return result;
+	}
+
+	//clears the visited edges of the area and the traced contours
+	private void reset(final int xPos, final int yPos, final int width, final int height) {
+		visitedX = xPos;
+		visitedY = yPos;
+		visitedWidth = width;
+		int wordCount = (int) (((long) width * height + 63) >>> 6);
+		if (visited.length < wordCount) {
+			visited = new long[wordCount];
+		} else {
+			Arrays.fill(visited, 0, wordCount, 0);
+		}
+		codes = new long[64];
+		codeCount = 0;
+		contours = new int[5 * 64];
+		contourCount = 0;
+	}
+
+	//follows the contour that starts with the top edge of the pixel, with the region on the right
+	private void traceContour(final int labels[], final int width, final int height, final int label,
+			final int startX, final int startY) {
+		int firstCode = codeCount;
+		int xPos = startX;
+		int yPos = startY;
+		int direction = RegionContours.EAST;
+
+		do {
+			addCode(direction);
+			if (direction == RegionContours.EAST) {
+				int pixelIndex = (yPos - visitedY) * visitedWidth + xPos - visitedX;
+				visited[pixelIndex >>> 6] |= 1L << pixelIndex;
+			}
+			xPos += RegionContours.STEP_X[direction];
+			yPos += RegionContours.STEP_Y[direction];
+
+			//pixels ahead on the right and on the left of the corner
+			boolean isRightInRegion;
+			boolean isLeftInRegion;
+			switch (direction) {
+			case RegionContours.EAST:
+				isRightInRegion = isLabel(labels, width, height, xPos, yPos, label);
+				isLeftInRegion = isLabel(labels, width, height, xPos, yPos - 1, label);
+				break;
+			case RegionContours.SOUTH:
+				isRightInRegion = isLabel(labels, width, height, xPos - 1, yPos, label);
+				isLeftInRegion = isLabel(labels, width, height, xPos, yPos, label);
+				break;
+			case RegionContours.WEST:
+				isRightInRegion = isLabel(labels, width, height, xPos - 1, yPos - 1, label);
+				isLeftInRegion = isLabel(labels, width, height, xPos - 1, yPos, label);
+				break;
+			default:
+				isRightInRegion = isLabel(labels, width, height, xPos, yPos - 1, label);
+				isLeftInRegion = isLabel(labels, width, height, xPos - 1, yPos - 1, label);
+				break;
+			}
+
+			//4-connected regions: diagonal neighbors are not connected, so turn right around them
+			if (!isRightInRegion) {
+				direction = (direction + 1) & 3;
+			} else if (isLeftInRegion) {
+				direction = (direction + 3) & 3;
+			}
+		} while (xPos != startX || yPos != startY || direction != RegionContours.EAST);
+
+		if (contourCount * 5 == contours.length) {
+			contours = Arrays.copyOf(contours, contours.length * 2);
+		}
+		int record = contourCount++ * 5;
+		contours[record] = label - 1;
+		contours[record + 1] = startX;
+		contours[record + 2] = startY;
+		contours[record + 3] = codeCount - firstCode;
+		contours[record + 4] = firstCode;
+	}
+
+	private static boolean isLabel(final int labels[], final int width, final int height, final int xPos,
+			final int yPos, final int label) {
+		return xPos >= 0 && yPos >= 0 && xPos < width && yPos < height && labels[yPos * width + xPos] == label;
+	}
+
+	private void addCode(final int direction) {
+		if ((codeCount >>> 5) == codes.length) {
+			codes = Arrays.copyOf(codes, codes.length * 2);
+		}
+		codes[codeCount >>> 5] |= (long) direction << ((codeCount & 31) << 1);
+		++codeCount;
+	}
+
+	//sorts the contours by region, keeping the order in which they were found
+	private RegionContours[] groupByRegion(final int regionCount) {
+		int offsets[] = new int[regionCount + 1];
+		for (int contour = 0; contour < contourCount; ++contour) {
+			++offsets[contours[contour * 5] + 1];
+		}
+		for (int region = 0; region < regionCount; ++region) {
+			offsets[region + 1] += offsets[region];
+		}
+
+		int records[] = new int[contourCount * RegionContours.RECORD_SIZE];
+		int fillPositions[] = Arrays.copyOf(offsets, regionCount);
+		for (int contour = 0; contour < contourCount; ++contour) {
+			int record = fillPositions[contours[contour * 5]]++ * RegionContours.RECORD_SIZE;
+			System.arraycopy(contours, contour * 5 + 1, records, record, RegionContours.RECORD_SIZE);
+		}
+
+		long regionCodes[] = Arrays.copyOf(codes, (codeCount + 31) >>> 5);
+		RegionContours result[] = new RegionContours[regionCount];
+		for (int region = 0; region < regionCount; ++region) {
+			result[region] = new RegionContours(regionCodes, records, offsets[region], offsets[region + 1] - offsets[region]);
+		}
+		codes = null;
+		contours = null;
+		return result;
+	}
+}
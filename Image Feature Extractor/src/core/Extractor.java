@@ -0,0 +1,185 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Headless entry point of the feature extraction. Finds the foreground
+ * regions of an image and computes their features.
+ *
+ * An extractor reuses its labeling buffers and must not be shared between
+ * threads. The returned results are immutable.
+ */
+public class Extractor {
+
+	public final static int BACKGROUND = 0xFFFFFFFF;
+	public final static int FOREGROUND = 0xFF000000;
+
+	//share of the labeling in the reported progress
+	private final static float LABELING_PROGRESS = 0.5f;
+	//regions between two progress reports
+	private final static int PROGRESS_INTERVAL = 256;
+
+	private RegionLabeler regionLabeler;
+	private RegionAnalyzer regionAnalyser;
+	private ContourTracer contourTracer;
+	private FeatureSet featureSet;
+	private List<FeatureExtractor> featureExtractors;
+
+	public Extractor() {
+		this(1);
+	}
+
+	public Extractor(final int parallelism) {
+		regionLabeler = new RegionLabeler(parallelism, RegionLabeler.DEFAULT_STRIP_HEIGHT);
+		regionAnalyser = new RegionAnalyzer();
+		contourTracer = new ContourTracer();
+		featureSet = FeatureSet.ALL;
+		featureExtractors = FeatureEngine.loadExtractors();
+	}
+
+	//extractors found with ServiceLoader and added ones, in the order they run
+	public List<FeatureExtractor> getFeatureExtractors() {
+		return featureExtractors;
+	}
+
+	//adds an extractor unless one of the same name is registered already
+	public void addFeatureExtractor(final FeatureExtractor extractor) {
+		for (FeatureExtractor other : featureExtractors) {
+			if (other.getName().equals(extractor.getName())) {
+				return;
+			}
+		}
+		featureExtractors.add(extractor);
+	}
+
+	public FeatureSet getFeatureSet() {
+		return featureSet;
+	}
+
+	//features that are not eager are computed on first access
+	public void setFeatureSet(final FeatureSet featureSet) {
+		this.featureSet = featureSet;
+	}
+
+	public AnalysisResult analyze(final BufferedImage image) {
+		return analyze(PixelSource.of(image));
+	}
+
+	/**
+	 * Analyzes a raster without color model. A pixel is foreground if its
+	 * first (up to three) bands are zero, so black for gray, binary and RGB
+	 * rasters.
+	 */
+	public AnalysisResult analyze(final Raster raster) {
+		return analyze(PixelSource.of(raster));
+	}
+
+	/**
+	 * Analyzes packed ARGB pixels. Only pixels equal to FOREGROUND belong
+	 * to regions.
+	 */
+	public AnalysisResult analyze(final int pixels[], final int width, final int height) {
+		return analyze(PixelSource.of(pixels, width, height));
+	}
+
+	public AnalysisResult analyze(final PixelSource source) {
+		return analyze(source, null);
+	}
+
+	/**
+	 * Analyzes the pixels and reports every region to the monitor as soon as
+	 * its eager features are computed. Throws a CancellationException if the
+	 * monitor cancels, which is checked after labeling and between regions.
+	 */
+	public AnalysisResult analyze(final PixelSource source, final AnalysisMonitor monitor) {
+		int width = source.getWidth();
+		int height = source.getHeight();
+		boolean hasEagerMoments = featureSet.hasEagerMoments();
+		final boolean hasEagerContours = featureSet.isEager(FeatureSet.Feature.CONTOURS);
+		//the features are computed from the runs, so labeling collects no moments or bounds
+		regionLabeler.setMomentOrder(RegionLabeler.NO_MOMENTS);
+		final int regionCount = regionLabeler.label(source);
+		checkCancelled(monitor);
+		if (monitor != null) {
+			monitor.onProgress(LABELING_PROGRESS);
+		}
+
+		RegionTable regions = new RegionTable(regionCount);
+		// one row for each connected component, ids start at zero and equal the row
+		for (int label = 1; label <= regionCount; ++label) {
+			int row = regions.addRow(label - 1);
+			regions.setRuns(row, regionLabeler.getRegionRuns(label));
+		}
+		//reported regions may compute their lazy features while the others are still computed
+		if (!hasEagerMoments || !hasEagerContours) {
+			regions.setLazyFeatures(new LazyFeatures(regionLabeler.getLabels(), width, height));
+		}
+		final RegionContours contours[] = hasEagerContours
+				? contourTracer.trace(regionLabeler.getLabels(), width, height, regionCount) : null;
+
+		List<FeatureExtractor> extractors = new ArrayList<FeatureExtractor>();
+		for (FeatureExtractor extractor : featureExtractors) {
+			if (featureSet.includes(extractor)) {
+				extractors.add(extractor);
+			}
+		}
+		new FeatureEngine(extractors).compute(regions, new RegionListener() {
+			public void onRegion(Region region) {
+				//contours need the area for the compactness
+				if (hasEagerContours) {
+					regionAnalyser.setContours(region, contours[region.getRow()]);
+				}
+				if (monitor != null) {
+					checkCancelled(monitor);
+					monitor.onRegion(region);
+					if ((region.getRow() + 1) % PROGRESS_INTERVAL == 0) {
+						monitor.onProgress(LABELING_PROGRESS + (1 - LABELING_PROGRESS) * (region.getRow() + 1) / regionCount);
+					}
+				}
+			}
+		});
+		if (monitor != null) {
+			monitor.onProgress(1);
+		}
+
+		return new AnalysisResult(width, height, regionLabeler.releaseLabels(), regions);
+	}
+
+	private static void checkCancelled(final AnalysisMonitor monitor) {
+		if (monitor != null && monitor.isCancelled()) {
+			throw new CancellationException("Analysis cancelled");
+		}
+	}
+
+	public RegionLabeler getRegionLabeler() {
+		return regionLabeler;
+	}
+}
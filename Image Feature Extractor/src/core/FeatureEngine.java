@@ -0,0 +1,129 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Runs feature extractors over the regions of a table. The runs of each
+ * region are read once and every run is handed to all extractors, so more
+ * features do not mean more passes over the pixels. The raw moments are
+ * summed once per region for all extractors that read them.
+ */
+public class FeatureEngine {
+
+	private final List<FeatureExtractor> extractors;
+	//order of the shared moment accumulator, -1 if no extractor reads moments
+	private final int momentOrder;
+
+	public FeatureEngine(final List<FeatureExtractor> extractors) {
+		this.extractors = Collections.unmodifiableList(new ArrayList<FeatureExtractor>(extractors));
+		int order = -1;
+		for (FeatureExtractor extractor : extractors) {
+			order = Math.max(order, extractor.getMomentOrder());
+		}
+		//accumulators sum up to order 1 or all orders, order 0 is summed with order 1
+		momentOrder = order < 0 ? -1 : order <= 1 ? 1 : MomentAccumulator.MAX_ORDER;
+	}
+
+	/**
+	 * Extractors registered with ServiceLoader. The built-in extractors are
+	 * added if their registration is not on the class path.
+	 */
+	public static List<FeatureExtractor> loadExtractors() {
+		List<FeatureExtractor> extractors = new ArrayList<FeatureExtractor>();
+		for (FeatureExtractor extractor : ServiceLoader.load(FeatureExtractor.class, FeatureExtractor.class.getClassLoader())) {
+			addExtractor(extractors, extractor);
+		}
+		addExtractor(extractors, new BoundingBoxExtractor());
+		addExtractor(extractors, new AreaExtractor());
+		addExtractor(extractors, new CentroidExtractor());
+		addExtractor(extractors, new MomentExtractor());
+		return extractors;
+	}
+
+	//adds the extractor unless one of the same name is in the list
+	private static void addExtractor(final List<FeatureExtractor> extractors, final FeatureExtractor extractor) {
+		for (FeatureExtractor other : extractors) {
+			if (other.getName().equals(extractor.getName())) {
+				return;
+			}
+		}
+		extractors.add(extractor);
+	}
+
+	public List<FeatureExtractor> getExtractors() {
+		return extractors;
+	}
+
+	//computes the features of all rows that have runs
+	public void compute(final RegionTable table) {
+		compute(table, null);
+	}
+
+	//as compute(table), the listener gets each region when its features are computed
+	public void compute(final RegionTable table, final RegionListener listener) {
+		FeatureExtractor.Accumulator accumulators[] = new FeatureExtractor.Accumulator[extractors.size()];
+		for (int i = 0; i < accumulators.length; ++i) {
+			accumulators[i] = extractors.get(i).createAccumulator(table);
+		}
+
+		for (int row = 0; row < table.size(); ++row) {
+			RegionRuns runs = table.getRuns(row);
+			if (runs == null) {
+				continue;
+			}
+			for (FeatureExtractor.Accumulator accumulator : accumulators) {
+				accumulator.init();
+			}
+			//the first run starts at the first pixel, the origin of the moments
+			MomentAccumulator moments = momentOrder >= 0 && runs.getRunCount() > 0
+					? new MomentAccumulator(runs.getStart(0), runs.getRow(0), momentOrder) : null;
+			for (int run = 0; run < runs.getRunCount(); ++run) {
+				int yPos = runs.getRow(run);
+				int xStart = runs.getStart(run);
+				int xEnd = runs.getEnd(run);
+				if (moments != null) {
+					moments.addRun(xStart, xEnd, yPos);
+				}
+				for (FeatureExtractor.Accumulator accumulator : accumulators) {
+					accumulator.acceptRun(xStart, xEnd, yPos);
+				}
+			}
+			for (int i = 0; i < accumulators.length; ++i) {
+				if (moments != null && extractors.get(i).getMomentOrder() >= 0) {
+					accumulators[i].acceptMoments(moments);
+				}
+				accumulators[i].finish(row);
+			}
+			if (listener != null) {
+				listener.onRegion(table.getRegion(row));
+			}
+		}
+	}
+}
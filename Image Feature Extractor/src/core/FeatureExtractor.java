@@ -0,0 +1,75 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+/**
+ * A region feature computed from the pixels of the region. Extractors are
+ * found with ServiceLoader, listed in META-INF/services/core.FeatureExtractor,
+ * and run by a FeatureEngine, which visits the pixels of every region once
+ * for all extractors together.
+ */
+public interface FeatureExtractor {
+
+	//unique name of the extractor
+	String getName();
+
+	//adds the columns of the feature to the table and returns an accumulator writing them
+	Accumulator createAccumulator(RegionTable table);
+
+	/**
+	 * Highest order of the raw moments the extractor reads, -1 for none. The
+	 * engine sums the moments of a region once, up to the highest order of
+	 * all its extractors, and hands them to Accumulator.acceptMoments.
+	 */
+	default int getMomentOrder() {
+		return -1;
+	}
+
+	/**
+	 * Collects the pixels of one region at a time: init() starts a region,
+	 * its pixels follow in raster order, then acceptMoments() gets the raw
+	 * moments if the extractor reads any and finish() writes the features of
+	 * the region to its table row.
+	 */
+	public static interface Accumulator {
+
+		void init();
+
+		void accept(int xPos, int yPos);
+
+		//the pixels xStart..xEnd (inclusive) of a row
+		default void acceptRun(int xStart, int xEnd, int yPos) {
+			for (int xPos = xStart; xPos <= xEnd; ++xPos) {
+				accept(xPos, yPos);
+			}
+		}
+
+		//moments relative to the first pixel of the region, shared by all accumulators of the region
+		default void acceptMoments(MomentAccumulator moments) {
+		}
+
+		void finish(int row);
+	}
+}
@@ -0,0 +1,76 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.util.EnumSet;
+
+/**
+ * Selects the region features an Extractor computes eagerly. All other
+ * features are computed on their first access and kept per region.
+ *
+ * Bounding box, area and centroid are always eager. Orientation,
+ * eccentricity and the hu moments share the raw moments up to order 3 of
+ * the MomentExtractor, so they are computed together: all of them eagerly
+ * if one is eager. If none is, the MomentExtractor is not run. Extractors
+ * that are not built in are always run.
+ */
+public class FeatureSet {
+
+	public static enum Feature {
+		BOUNDING_BOX, AREA, CENTROID, CONTOURS, ORIENTATION, ECCENTRICITY, HU_MOMENTS
+	}
+
+	//everything eager, as needed by feature files
+	public static final FeatureSet ALL = new FeatureSet(EnumSet.allOf(Feature.class));
+	//bounding box, area and centroid eager, everything else lazy
+	public static final FeatureSet GEOMETRIC = new FeatureSet(EnumSet.of(Feature.BOUNDING_BOX, Feature.AREA, Feature.CENTROID));
+
+	private final EnumSet<Feature> eagerFeatures;
+
+	public FeatureSet(final EnumSet<Feature> eagerFeatures) {
+		this.eagerFeatures = EnumSet.copyOf(eagerFeatures);
+		this.eagerFeatures.add(Feature.BOUNDING_BOX);
+		this.eagerFeatures.add(Feature.AREA);
+		this.eagerFeatures.add(Feature.CENTROID);
+	}
+
+	public boolean isEager(final Feature feature) {
+		return eagerFeatures.contains(feature);
+	}
+
+	public boolean isLazy(final Feature feature) {
+		return !eagerFeatures.contains(feature);
+	}
+
+	//true if the moment features are computed at extraction
+	public boolean hasEagerMoments() {
+		return isEager(Feature.ORIENTATION) || isEager(Feature.ECCENTRICITY) || isEager(Feature.HU_MOMENTS);
+	}
+
+	//true if the extractor runs at extraction
+	public boolean includes(final FeatureExtractor extractor) {
+		return hasEagerMoments() || !MomentExtractor.NAME.equals(extractor.getName());
+	}
+}
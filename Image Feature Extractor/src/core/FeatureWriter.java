@@ -0,0 +1,204 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Writes the features of all regions of an analysis as comma separated
+ * values, one line per region. Columns added by feature extractors follow
+ * the built-in ones. The pixels of the regions can be written as
+ * runs, one line per run, and the clusters of similar regions and the
+ * nearest glyphs of a dictionary as one line per region.
+ */
+public class FeatureWriter {
+
+	public static final String HEADER = "id,x,y,width,height,area,centroidX,centroidY,"
+			+ "orientation,eccentricity,hu1,hu2,hu3,hu4,hu5";
+	public static final String RUN_HEADER = "id,row,xStart,xEnd";
+	public static final String CLUSTER_HEADER = "id,cluster,clusterSize,representative";
+
+	private FeatureWriter() {
+	}
+
+	public static void write(final AnalysisResult result, final File file) throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8")));
+		try {
+			write(result, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	public static void write(final AnalysisResult result, final Writer out) throws IOException {
+		RegionTable table = result.getRegionTable();
+		int columnCount = table.getColumnCount();
+		out.write(HEADER);
+		for (int column = 0; column < columnCount; ++column) {
+			out.write(',');
+			out.write(table.getColumnName(column));
+		}
+		out.write('\n');
+
+		StringBuilder line = new StringBuilder(256);
+		for (Region region : result.getRegions()) {
+			line.setLength(0);
+			appendRegion(region, line);
+			for (int column = 0; column < columnCount; ++column) {
+				line.append(',').append(table.getValue(region.getRow(), column));
+			}
+			line.append('\n');
+			out.append(line);
+		}
+	}
+
+	public static void writeRuns(final AnalysisResult result, final File file) throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8")));
+		try {
+			writeRuns(result, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	public static void writeRuns(final AnalysisResult result, final Writer out) throws IOException {
+		StringBuilder line = new StringBuilder(64);
+		out.write(RUN_HEADER);
+		out.write('\n');
+
+		for (Region region : result.getRegions()) {
+			RegionRuns runs = region.getRuns();
+			for (int run = 0; run < runs.getRunCount(); ++run) {
+				line.setLength(0);
+				line.append(region.getID()).append(',')
+					.append(runs.getRow(run)).append(',')
+					.append(runs.getStart(run)).append(',')
+					.append(runs.getEnd(run)).append('\n');
+				out.append(line);
+			}
+		}
+	}
+
+	public static void writeClusters(final RegionClustering clustering, final File file) throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8")));
+		try {
+			writeClusters(clustering, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	public static void writeClusters(final RegionClustering clustering, final Writer out) throws IOException {
+		StringBuilder line = new StringBuilder(64);
+		out.write(CLUSTER_HEADER);
+		out.write('\n');
+
+		int regionIDs[] = clustering.getRegionIDs();
+		int clusters[] = clustering.getClusters();
+		for (int i = 0; i < regionIDs.length; ++i) {
+			int cluster = clusters[i];
+			line.setLength(0);
+			line.append(regionIDs[i]).append(',')
+				.append(cluster).append(',')
+				.append(clustering.getClusterSize(cluster)).append(',')
+				.append(clustering.getRepresentative(cluster)).append('\n');
+			out.append(line);
+		}
+	}
+
+	public static void writeMatches(final GlyphMatches matches, final File file) throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8")));
+		try {
+			writeMatches(matches, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	//labels are quoted, they may be any character
+	public static void writeMatches(final GlyphMatches matches, final Writer out) throws IOException {
+		StringBuilder line = new StringBuilder(64);
+		line.append("id");
+		for (int rank = 1; rank <= matches.getK(); ++rank) {
+			line.append(",label").append(rank).append(",distance").append(rank);
+		}
+		line.append('\n');
+		out.append(line);
+
+		for (int index = 0; index < matches.getRegionCount(); ++index) {
+			line.setLength(0);
+			line.append(matches.getRegionID(index));
+			for (int rank = 0; rank < matches.getK(); ++rank) {
+				line.append(',');
+				if (rank < matches.getMatchCount(index)) {
+					line.append('"').append(matches.getLabel(index, rank).replace("\"", "\"\"")).append('"')
+						.append(',').append(matches.getDistance(index, rank));
+				} else {
+					line.append(',');
+				}
+			}
+			line.append('\n');
+			out.append(line);
+		}
+	}
+
+	public static void writeHeader(final Writer out) throws IOException {
+		out.write(HEADER);
+		out.write('\n');
+	}
+
+	public static void writeRegion(final Region region, final Writer out) throws IOException {
+		StringBuilder line = new StringBuilder(256);
+		appendRegion(region, line);
+		line.append('\n');
+		out.append(line);
+	}
+
+	//built-in features of the region, without line end
+	private static void appendRegion(final Region region, final StringBuilder line) {
+		BoundingBox bBox = region.getBoundingBox();
+		Centroid centroid = region.getCentroid();
+
+		line.append(region.getID()).append(',')
+			.append(bBox.getX()).append(',')
+			.append(bBox.getY()).append(',')
+			.append(bBox.getWidth()).append(',')
+			.append(bBox.getHeight()).append(',')
+			.append((int) region.getArea()).append(',')
+			.append(centroid.getX()).append(',')
+			.append(centroid.getY()).append(',')
+			.append(region.getOrientationAngle()).append(',')
+			.append(region.getEccentricity());
+		for (int num = 1; num <= 5; ++num) {
+			line.append(',').append(region.getHuMoment(num));
+		}
+	}
+}
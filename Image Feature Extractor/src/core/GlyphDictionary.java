@@ -0,0 +1,243 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Labeled feature vectors of known glyphs, memory-mapped from a file
+ * written by GlyphDictionaryBuilder, for the k nearest neighbour
+ * classification of regions.
+ *
+ * The file is little endian: a header with magic, version, entry and label
+ * count, the feature weights, the weighted feature vectors in the order of
+ * an implicit k-d tree (the node of a range is its median), the label
+ * index per entry, and the UTF-8 labels with their offsets. Opening a
+ * dictionary checks the header, the label indices and the label offsets,
+ * the vectors are read from the mapping during the searches. A dictionary
+ * can be searched by several threads.
+ */
+public class GlyphDictionary {
+
+	//"GLYD" read as little endian int
+	static final int MAGIC = 0x44594C47;
+	static final int VERSION = 1;
+
+	private static final int DIMS = SimilarityIndex.FEATURE_COUNT;
+	private static final int HEADER_SIZE = 16;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final int entryCount;
+	private final int labelCount;
+	private final double weights[];
+	private final DoubleBuffer features;
+	private final IntBuffer entryLabels;
+	private final IntBuffer labelOffsets;
+	private final ByteBuffer labelBytes;
+	//labels decoded on first use
+	private final String labels[];
+
+	private GlyphDictionary(final ByteBuffer buffer) throws IOException {
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.capacity() < getFeatureOffset() || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a glyph dictionary");
+		}
+		if (buffer.getInt(4) != VERSION) throw new IOException("Unsupported glyph dictionary version " + buffer.getInt(4));
+		entryCount = buffer.getInt(8);
+		labelCount = buffer.getInt(12);
+		long labelOffsetsStart = getFeatureOffset() + (long) entryCount * DIMS * 8 + entryCount * 4L;
+		long labelBytesStart = labelOffsetsStart + (labelCount + 1) * 4L;
+		if (entryCount < 0 || labelCount < 0 || labelBytesStart > buffer.capacity()) {
+			throw new IOException("Truncated glyph dictionary");
+		}
+
+		weights = new double[DIMS];
+		for (int dim = 0; dim < DIMS; ++dim) {
+			weights[dim] = buffer.getDouble(HEADER_SIZE + dim * 8);
+		}
+		features = slice(buffer, getFeatureOffset(), entryCount * DIMS * 8).asDoubleBuffer();
+		entryLabels = slice(buffer, (int) (labelOffsetsStart - entryCount * 4L), entryCount * 4).asIntBuffer();
+		labelOffsets = slice(buffer, (int) labelOffsetsStart, (labelCount + 1) * 4).asIntBuffer();
+		int labelSize = labelOffsets.get(labelCount);
+		if (labelSize < 0 || labelBytesStart + labelSize > buffer.capacity()) {
+			throw new IOException("Truncated glyph dictionary");
+		}
+		labelBytes = slice(buffer, (int) labelBytesStart, labelSize);
+		labels = new String[labelCount];
+
+		//getLabel() relies on valid labels and offsets
+		int previousOffset = 0;
+		for (int label = 0; label <= labelCount; ++label) {
+			int labelOffset = labelOffsets.get(label);
+			if (labelOffset < previousOffset) {
+				throw new IOException("Corrupt glyph dictionary: label offset " + labelOffset + " of label " + label);
+			}
+			previousOffset = labelOffset;
+		}
+		for (int entry = 0; entry < entryCount; ++entry) {
+			int label = entryLabels.get(entry);
+			if (label < 0 || label >= labelCount) {
+				throw new IOException("Corrupt glyph dictionary: label " + label + " of entry " + entry);
+			}
+		}
+	}
+
+	private static ByteBuffer slice(final ByteBuffer buffer, final int offset, final int length) {
+		ByteBuffer slice = buffer.duplicate();
+		slice.position(offset);
+		slice.limit(offset + length);
+		return slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	static int getFeatureOffset() {
+		return HEADER_SIZE + DIMS * 8;
+	}
+
+	public static GlyphDictionary open(final File file) throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = input.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) throw new IOException("Glyph dictionary too large: " + file);
+			//the mapping stays valid after the file is closed
+			return new GlyphDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			input.close();
+		}
+	}
+
+	public int size() {
+		return entryCount;
+	}
+
+	public int getLabelCount() {
+		return labelCount;
+	}
+
+	public String getLabel(final int entry) {
+		int label = entryLabels.get(entry);
+		String name = labels[label];
+		if (name == null) {
+			ByteBuffer bytes = labelBytes.duplicate();
+			bytes.limit(labelOffsets.get(label + 1));
+			bytes.position(labelOffsets.get(label));
+			name = UTF8.decode(bytes).toString();
+			labels[label] = name;
+		}
+		return name;
+	}
+
+	/**
+	 * Finds the k entries nearest to the feature vector (in the order of
+	 * SimilarityIndex.getFeatures()), nearest first. The distances are
+	 * euclidean on the weighted features. Returns the number of entries
+	 * found, which is 0 for vectors with undefined features.
+	 */
+	public int findNearest(final double vector[], final int offset, final int k, final int entries[], final int entryOffset,
+			final double distances[], final int distanceOffset) {
+		double query[] = new double[DIMS];
+		for (int dim = 0; dim < DIMS; ++dim) {
+			query[dim] = vector[offset + dim] * weights[dim];
+			if (Double.isNaN(query[dim])) {
+				return 0;
+			}
+		}
+		int found = search(query, 0, entryCount, 0, k, entries, entryOffset, distances, distanceOffset, 0);
+		for (int i = 0; i < found; ++i) {
+			distances[distanceOffset + i] = Math.sqrt(distances[distanceOffset + i]);
+		}
+		return found;
+	}
+
+	//collects the nearest entries of the range with their squared distances, returns their number
+	private int search(final double query[], final int from, final int to, final int depth, final int k, final int entries[],
+			final int entryOffset, final double distances[], final int distanceOffset, int found) {
+		if (from >= to || k <= 0) {
+			return found;
+		}
+		int median = (from + to) >>> 1;
+		int base = median * DIMS;
+		double distance = 0;
+		for (int dim = 0; dim < DIMS; ++dim) {
+			double diff = query[dim] - features.get(base + dim);
+			distance += diff * diff;
+		}
+
+		//insertion into the sorted matches
+		if (found < k || distance < distances[distanceOffset + found - 1]) {
+			int i = found < k ? found++ : found - 1;
+			while (i > 0 && distances[distanceOffset + i - 1] > distance) {
+				distances[distanceOffset + i] = distances[distanceOffset + i - 1];
+				entries[entryOffset + i] = entries[entryOffset + i - 1];
+				--i;
+			}
+			distances[distanceOffset + i] = distance;
+			entries[entryOffset + i] = median;
+		}
+
+		//the entries before the median are <= it on the split feature, those after it >=
+		double diff = query[depth % DIMS] - features.get(base + depth % DIMS);
+		if (diff < 0) {
+			found = search(query, from, median, depth + 1, k, entries, entryOffset, distances, distanceOffset, found);
+			if (found < k || diff * diff < distances[distanceOffset + found - 1]) {
+				found = search(query, median + 1, to, depth + 1, k, entries, entryOffset, distances, distanceOffset, found);
+			}
+		} else {
+			found = search(query, median + 1, to, depth + 1, k, entries, entryOffset, distances, distanceOffset, found);
+			if (found < k || diff * diff < distances[distanceOffset + found - 1]) {
+				found = search(query, from, median, depth + 1, k, entries, entryOffset, distances, distanceOffset, found);
+			}
+		}
+		return found;
+	}
+
+	//the k nearest entries of every region of the table
+	public GlyphMatches classify(final RegionTable regions, final int k) {
+		regions.computeMomentFeatures();
+		int count = regions.size();
+		double orientation[] = regions.getOrientationAngle();
+		double eccentricity[] = regions.getEccentricity();
+		double huMoments[] = regions.getHuMoments();
+
+		int matchCounts[] = new int[count];
+		int entries[] = new int[count * k];
+		double distances[] = new double[count * k];
+		double vector[] = new double[DIMS];
+		for (int row = 0; row < count; ++row) {
+			vector[0] = orientation[row];
+			vector[1] = eccentricity[row];
+			System.arraycopy(huMoments, row * RegionTable.HU_MOMENT_COUNT, vector, 2, RegionTable.HU_MOMENT_COUNT);
+			matchCounts[row] = findNearest(vector, 0, k, entries, row * k, distances, row * k);
+		}
+		return new GlyphMatches(this, regions.getIDs(), k, matchCounts, entries, distances);
+	}
+}
@@ -0,0 +1,181 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects labeled feature vectors and writes them as a glyph dictionary
+ * file for GlyphDictionary.
+ *
+ * The features are divided by the tolerances given to the builder, so all
+ * features count about the same in the distances. The entries are written
+ * in the order of an implicit k-d tree, the file needs no index of its own.
+ */
+public class GlyphDictionaryBuilder {
+
+	private static final int DIMS = SimilarityIndex.FEATURE_COUNT;
+
+	private final double weights[];
+	private final Map<String, Integer> labelIndices;
+	private String labels[];
+	private int labelCount;
+	//weighted feature vectors, DIMS values per entry
+	private double features[];
+	private int entryLabels[];
+	private int entryCount;
+
+	/**
+	 * The tolerances are the thresholds per feature of
+	 * SimilarityIndex.getFeatures(), as in AnalysisSession.getTolerances().
+	 * Features with infinite tolerance are ignored.
+	 */
+	public GlyphDictionaryBuilder(final double tolerances[]) {
+		weights = new double[DIMS];
+		for (int dim = 0; dim < DIMS; ++dim) {
+			if (!(tolerances[dim] > 0)) throw new IllegalArgumentException("Tolerances must be positive: " + tolerances[dim]);
+			weights[dim] = 1 / tolerances[dim];
+		}
+		labelIndices = new HashMap<String, Integer>();
+		labels = new String[16];
+		features = new double[64 * DIMS];
+		entryLabels = new int[64];
+	}
+
+	//regions with undefined features are left out, returns whether the region was added
+	public boolean add(final String label, final Region region) {
+		double vector[] = new double[DIMS];
+		SimilarityIndex.getFeatures(region, vector, 0);
+		return add(label, vector, 0);
+	}
+
+	//adds the regions of an analysis with a label per region id, regions without label are left out
+	public int add(final AnalysisResult result, final Map<Integer, String> labelsOfIDs) {
+		int added = 0;
+		for (Map.Entry<Integer, String> entry : labelsOfIDs.entrySet()) {
+			int id = entry.getKey();
+			if (id >= 0 && id < result.getRegionCount() && add(entry.getValue(), result.getRegion(id))) {
+				++added;
+			}
+		}
+		return added;
+	}
+
+	public boolean add(final String label, final double vector[], final int offset) {
+		if (label == null) throw new IllegalArgumentException("Label must not be null");
+		for (int dim = 0; dim < DIMS; ++dim) {
+			if (Double.isNaN(vector[offset + dim])) {
+				return false;
+			}
+		}
+
+		if (entryCount == entryLabels.length) {
+			entryLabels = Arrays.copyOf(entryLabels, entryCount * 2);
+			features = Arrays.copyOf(features, entryCount * 2 * DIMS);
+		}
+		for (int dim = 0; dim < DIMS; ++dim) {
+			features[entryCount * DIMS + dim] = vector[offset + dim] * weights[dim];
+		}
+		entryLabels[entryCount++] = getLabelIndex(label);
+		return true;
+	}
+
+	private int getLabelIndex(final String label) {
+		Integer index = labelIndices.get(label);
+		if (index == null) {
+			if (labelCount == labels.length) {
+				labels = Arrays.copyOf(labels, labelCount * 2);
+			}
+			index = labelCount;
+			labels[labelCount++] = label;
+			labelIndices.put(label, index);
+		}
+		return index;
+	}
+
+	public int size() {
+		return entryCount;
+	}
+
+	public void write(final File file) throws IOException {
+		double tree[] = Arrays.copyOf(features, entryCount * DIMS);
+		int treeLabels[] = Arrays.copyOf(entryLabels, entryCount);
+		KdTree.build(tree, treeLabels, entryCount);
+
+		Charset utf8 = Charset.forName("UTF-8");
+		byte labelBytes[][] = new byte[labelCount][];
+		int labelSize = 0;
+		for (int label = 0; label < labelCount; ++label) {
+			labelBytes[label] = labels[label].getBytes(utf8);
+			labelSize += labelBytes[label].length;
+		}
+
+		long size = GlyphDictionary.getFeatureOffset() + (long) entryCount * DIMS * 8 + entryCount * 4L
+				+ (labelCount + 1) * 4L + labelSize;
+		if (size > Integer.MAX_VALUE) throw new IOException("Glyph dictionary too large: " + size + " bytes");
+		ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(GlyphDictionary.MAGIC);
+		buffer.putInt(GlyphDictionary.VERSION);
+		buffer.putInt(entryCount);
+		buffer.putInt(labelCount);
+		for (int dim = 0; dim < DIMS; ++dim) {
+			buffer.putDouble(weights[dim]);
+		}
+		for (int i = 0; i < tree.length; ++i) {
+			buffer.putDouble(tree[i]);
+		}
+		for (int i = 0; i < entryCount; ++i) {
+			buffer.putInt(treeLabels[i]);
+		}
+		int labelOffset = 0;
+		for (int label = 0; label < labelCount; ++label) {
+			buffer.putInt(labelOffset);
+			labelOffset += labelBytes[label].length;
+		}
+		buffer.putInt(labelOffset);
+		for (int label = 0; label < labelCount; ++label) {
+			buffer.put(labelBytes[label]);
+		}
+		buffer.flip();
+
+		FileChannel channel = new FileOutputStream(file).getChannel();
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} finally {
+			channel.close();
+		}
+	}
+}
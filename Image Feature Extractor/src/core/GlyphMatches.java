@@ -0,0 +1,82 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+/**
+ * The nearest glyph dictionary entries of a set of regions, nearest first.
+ * The regions are addressed by their index in the classified table.
+ */
+public class GlyphMatches {
+
+	private final GlyphDictionary dictionary;
+	private final int regionIDs[];
+	private final int k;
+	private final int matchCounts[];
+	//k entries and distances per region
+	private final int entries[];
+	private final double distances[];
+
+	GlyphMatches(final GlyphDictionary dictionary, final int regionIDs[], final int k, final int matchCounts[],
+			final int entries[], final double distances[]) {
+		this.dictionary = dictionary;
+		this.regionIDs = regionIDs;
+		this.k = k;
+		this.matchCounts = matchCounts;
+		this.entries = entries;
+		this.distances = distances;
+	}
+
+	public int getRegionCount() {
+		return regionIDs.length;
+	}
+
+	public int getRegionID(final int index) {
+		return regionIDs[index];
+	}
+
+	//at most k, 0 for regions with undefined features
+	public int getMatchCount(final int index) {
+		return matchCounts[index];
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	//dictionary entry of the match with the given rank, 0 is the nearest
+	public int getEntry(final int index, final int rank) {
+		if (rank >= matchCounts[index]) throw new IndexOutOfBoundsException("No match " + rank + " for region " + regionIDs[index]);
+		return entries[index * k + rank];
+	}
+
+	public String getLabel(final int index, final int rank) {
+		return dictionary.getLabel(getEntry(index, rank));
+	}
+
+	public double getDistance(final int index, final int rank) {
+		if (rank >= matchCounts[index]) throw new IndexOutOfBoundsException("No match " + rank + " for region " + regionIDs[index]);
+		return distances[index * k + rank];
+	}
+}
@@ -23,264 +23,417 @@ THE SOFTWARE.
 */
 
 package core;
-import java.util.HashMap;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import utils.ColorGenerator;
 
 import core.Region.RegionParams;
 
-import gui.ImageComponent;
-
+/**
+ * Connects an analysis session to the display: keeps the selected regions
+ * and the highlighted image pixels.
+ *
+ * Highlights are painted straight into the data buffer of one display
+ * image. Listeners are informed once per batch of selection changes with
+ * the union of the changed bounding boxes.
+ *
+ * A new image is analyzed on a background thread, cancelling the analysis
+ * of the previous image. Regions are added to the session as they are found.
+ * Session updates and analysis listeners run on the callback executor, a
+ * GUI sets one that runs them on its event thread. By default they run on
+ * the analysis thread.
+ */
 public class ImageAnalyzer implements ImageChangeListener {
 
-	private ImageComponent image;
+	private AnalysisSession session;
 	private RegionManager regionMgr;
-	private RegionAnalyzer regionAnalyser;
+	private int imageWidth;
+	private int imageHeight;
 	private int sourcePixels[];
+	//data buffer of the display image
 	private int destPixels[];
-	private HashMap<Integer, Region> selectedRegions;
+	private BufferedImage displayImage;
+	private BitSet selectedRegions;
+	//region selected with its similar regions, -1 for other selections
+	private int referenceRegionID;
+	//follows threshold changes of the similarity selection, built on the first change
+	private SimilaritySearch similaritySearch;
+	//changed area of the current batch, null if nothing changed
+	private Rectangle dirtyRect;
 	private int selectionColor;
 	
-	private double huTresholds[];
-	private float orientationTreshold;
-	private float eccentricityThreshold;
+	private Vector<RegionSelectionListener> selectionListeners;
+	private Vector<AnalysisListener> analysisListeners;
+	
+	//runs one analysis at a time, the session's extractor is not shared
+	private ExecutorService analysisExecutor;
+	//analysis of the current image, null if none was started
+	private AnalysisTask analysisTask;
+	//runs the session updates and listener calls of the analysis
+	private Executor callbackExecutor;
+	
+	public ImageAnalyzer(final AnalysisSession session, final ColorGenerator colorGenerator){
+		this.session = session;
+		regionMgr = session.getRegionManager();
+		selectedRegions = new BitSet();
+		referenceRegionID = -1;
+		selectionColor = colorGenerator.getRandomColor();
+		selectionListeners = new Vector<RegionSelectionListener>();
+		analysisListeners = new Vector<AnalysisListener>();
+		analysisExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "Image analysis");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		callbackExecutor = new Executor() {
+			public void execute(Runnable task) {
+				task.run();
+			}
+		};
+	}
+	
+	//set before the first image is analyzed
+	public void setCallbackExecutor(Executor callbackExecutor){
+		this.callbackExecutor = callbackExecutor;
+	}
+	
+	public int getSelectedRegion(final int xPos, final int yPos){
+		return session.getRegionAt(xPos, yPos);
+	}
+	
+	public void deselectAllRegions(){
+		clearReferenceRegion();
+		for(int id = selectedRegions.nextSetBit(0); id >= 0; id = selectedRegions.nextSetBit(id + 1)){
+			highlight(id, false);
+		}
+		fireSelectionChange();
+	}
+	
+	public void setRegionSelected(int id, boolean isSelected){		
+		if(regionMgr.hasRegion(id)){
+			clearReferenceRegion();
+			highlight(id, isSelected);
+			fireSelectionChange();
+		} else {
+			System.err.println("No region with id " + id + " found.");
+		}
+	}
+	
+	//replaces the selection, listeners are informed once
+	public void setSelectedRegions(Collection<Integer> regionIDs){
+		clearReferenceRegion();
+		replaceSelection(regionIDs);
+	}
+	
+	private void replaceSelection(Collection<Integer> regionIDs){
+		BitSet newSelection = new BitSet();
+		for(int id : regionIDs){
+			if(regionMgr.hasRegion(id)){
+				newSelection.set(id);
+			}
+		}
+		
+		for(int id = selectedRegions.nextSetBit(0); id >= 0; id = selectedRegions.nextSetBit(id + 1)){
+			if(!newSelection.get(id)){
+				highlight(id, false);
+			}
+		}
+		for(int id = newSelection.nextSetBit(0); id >= 0; id = newSelection.nextSetBit(id + 1)){
+			highlight(id, true);
+		}
+		fireSelectionChange();
+	}
+	
+	//selects only the region and all regions similar to it
+	public void selectRegionAndSimilar(int regionID){
+		List<Integer> regionIDs = session.findSimilarRegions(regionID);
+		regionIDs.add(regionID);
+		clearReferenceRegion();
+		replaceSelection(regionIDs);
+		if(regionMgr.hasRegion(regionID)){
+			referenceRegionID = regionID;
+		}
+	}
+	
+	private void clearReferenceRegion(){
+		referenceRegionID = -1;
+		similaritySearch = null;
+	}
 	
-	private ImageAnalyzer(){
-		regionMgr = RegionManager.getInstance();
-		regionAnalyser = new RegionAnalyzer();
-		selectedRegions = new HashMap<Integer, Region>();
-		selectionColor = ColorGenerator.getInstance().getRandomColor();
+	//paints or removes the highlight of a region without informing listeners
+	private void highlight(int id, boolean isSelected){
+		if(selectedRegions.get(id) == isSelected){
+			return;
+		}
+		selectedRegions.set(id, isSelected);
 		
-		orientationTreshold = 10;
+		Region region = regionMgr.getRegion(id);
+		if(region == null){
+			return;
+		}
 		
-		huTresholds = new double[5];
-		huTresholds[0] = 0.04	;
-		huTresholds[1] = 0.004;
-		huTresholds[2] = 0.009;
-		huTresholds[3] = 0.004;
-		huTresholds[4] = 0.00001;
+		if(isSelected){
+			region.getRuns().fill(destPixels, imageWidth, selectionColor);
+		} else {
+			region.getRuns().copy(sourcePixels, destPixels, imageWidth);
+		}
 		
-		eccentricityThreshold = 0.05f;
+		BoundingBox bBox = region.getBoundingBox();
+		Rectangle regionRect = bBox != null
+				? new Rectangle(bBox.getX(), bBox.getY(), bBox.getWidth() + 1, bBox.getHeight() + 1)
+				: new Rectangle(0, 0, imageWidth, imageHeight);
+		if(dirtyRect == null){
+			dirtyRect = regionRect;
+		} else {
+			dirtyRect.add(regionRect);
+		}
 	}
 	
-	private void analyse(){
-		int pixels[] = regionAnalyser.getPixels();
-		
-		int imageWidth = image.getImageWidth();
-		int imageHeight = image.getImageHeight();
+	private void fireSelectionChange(){
+		if(dirtyRect == null){
+			return;
+		}
+		Rectangle changedRect = dirtyRect;
+		dirtyRect = null;
 		
-		// go through pixels and use flood filler to find regions
-		for (int yPos = 0; yPos < imageHeight; ++yPos) {
-			for (int xPos = 0; xPos < imageWidth; ++xPos) {
-				int pixelIndex = yPos * imageWidth + xPos;
-				
-				// found new region
-				if (pixels[pixelIndex] == ImageComponent.FOREGROUND) {
-					regionAnalyser.fill(pixelIndex);
-					
-					//create descriptor for the region
-					Region region = regionMgr.createRegion();
-					
-					//pixel data
-					region.setPixels(regionAnalyser.getRegionPixels());
-					
-					//Bounding Box
-					int posX = regionAnalyser.getLeftBound();
-					int posY = regionAnalyser.getUpperBound();
-					int bBoxWidth = regionAnalyser.getRightBound()-posX;
-					int bBoxHeight = regionAnalyser.getLowerBound()-posY;
-					
-					BoundingBox bBox = new BoundingBox(posX, posY-1, bBoxWidth, bBoxHeight+1);
-					region.setBoundingBox(bBox);
-				
-					//area
-					region.setArea((int)regionAnalyser.getArea());
-					
-					//centroid
-					int centroidXPos = posX + (int)regionAnalyser.getCentroidX();
-					int centroidYPos = posY + (int)regionAnalyser.getCentroidY();;
-					
-					Centroid centroid = new Centroid(centroidXPos, centroidYPos);
-					region.setCentroid(centroid);
-					
-					//orientation
-					region.setOrientationAngle(regionAnalyser.getOrientationAngle());
-					
-					//eccentricity
-					region.setEccentricity(regionAnalyser.getEccentricity());
-					
-					//hu moments					
-					region.setHuMoment(1, regionAnalyser.getHuMoment(1));
-					region.setHuMoment(2, regionAnalyser.getHuMoment(2));
-					region.setHuMoment(3, regionAnalyser.getHuMoment(3));
-					region.setHuMoment(4, regionAnalyser.getHuMoment(4));
-					region.setHuMoment(5, regionAnalyser.getHuMoment(5));
-				}
-			}
+		//inform listeners
+		Iterator<RegionSelectionListener> listenerIt = selectionListeners.iterator();
+		while(listenerIt.hasNext()){
+			listenerIt.next().onSelectionChange(displayImage, changedRect);
 		}
 	}
 
-	public int getSelectedRegion(final int xPos, final int yPos){
-		int id=-1;
+	public void onImageChange(BufferedImage image) {
+		this.imageWidth = image.getWidth();
+		this.imageHeight = image.getHeight();
 		
-		//check the position against each regions bounding box
-		if (xPos >= 0 && yPos >= 0 && xPos < image.getImageWidth()
-				&& yPos < image.getImageHeight()) {
-			
-			Iterator<Integer> regionIDIt = regionMgr.getRegionIDs();
-			while(regionIDIt.hasNext()){
-				Region currentRegion = regionMgr.getRegion(regionIDIt.next());
-				if(currentRegion.hasParam(RegionParams.BOUNDING_BOX)){
-					BoundingBox bBox = currentRegion.getBoundingBox();
-					//check if position is inside bounding box
-					if(xPos >= bBox.getX() && yPos >= bBox.getY() && xPos <= bBox.getX() + bBox.getWidth() && yPos <= bBox.getY() + bBox.getHeight()){
-						//selected pixel must be foreground
-						int pixels[] = image.getPixels();
-						int pixelIndex = yPos * image.getImageWidth() + xPos;
-						if(pixels[pixelIndex] == ImageComponent.FOREGROUND){
-							return currentRegion.getID();
-						}
-					}
-				}
-			}
+		//the display image is kept for the whole image, highlights are written to its buffer
+		displayImage = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2 = displayImage.createGraphics();
+		g2.setComposite(AlphaComposite.Src);
+		g2.drawImage(image, 0, 0, null);
+		g2.dispose();
+		destPixels = ((DataBufferInt) displayImage.getRaster().getDataBuffer()).getData();
+		sourcePixels = destPixels.clone();
+		
+		selectedRegions.clear();
+		clearReferenceRegion();
+		dirtyRect = null;
+		
+		if(analysisTask != null){
+			analysisTask.cancel();
 		}
-		return id;
+		session.clear();
+		analysisTask = new AnalysisTask(image);
+		analysisExecutor.execute(analysisTask);
+		fireAnalysisProgress(0);
 	}
 	
-	public void deselectAllRegions(){
-		Iterator<Integer> selectedRegionsIt = selectedRegions.keySet().iterator();
-		
-		while(selectedRegionsIt.hasNext()){
-			setRegionSelected(selectedRegionsIt.next(), false);
+	private void fireAnalysisProgress(int percent){
+		Iterator<AnalysisListener> listenerIt = analysisListeners.iterator();
+		while(listenerIt.hasNext()){
+			listenerIt.next().onAnalysisProgress(percent);
 		}
-		selectedRegions.clear();
 	}
 	
-	public void setRegionSelected(int id, boolean isSelected){		
-		if(regionMgr.hasRegion(id)){
-			Region region = regionMgr.getRegion(id);
-			int pixels[] = region.getPixels();
-			
-			if(isSelected){
-				for(int i=0;i<pixels.length;++i){
-					destPixels[pixels[i]] = selectionColor;
+	//true while the current image is analyzed
+	public boolean isAnalyzing(){
+		return analysisTask != null && !analysisTask.isDone();
+	}
+	
+	//analyzes the image on the analysis thread and hands regions, progress and the result to the callback executor
+	private class AnalysisTask implements Runnable, AnalysisMonitor {
+		
+		private final BufferedImage image;
+		private volatile boolean isCancelled;
+		//set by the callback executor once the result or failure is handled
+		private boolean isDone;
+		//regions found but not yet handed over, a delivery is pending while it is not empty
+		private List<Region> foundRegions;
+		//last percentage handed over, only used on the analysis thread
+		private int percent;
+		
+		AnalysisTask(BufferedImage image){
+			this.image = image;
+			foundRegions = new ArrayList<Region>();
+			percent = -1;
+		}
+		
+		void cancel(){
+			isCancelled = true;
+		}
+		
+		public boolean isCancelled(){
+			return isCancelled;
+		}
+		
+		boolean isDone(){
+			return isDone;
+		}
+		
+		private boolean isCurrent(){
+			return analysisTask == this && !isCancelled;
+		}
+		
+		public void run() {
+			AnalysisResult result = null;
+			Throwable failure = null;
+			try {
+				result = session.extract(image, this);
+			} catch (RuntimeException e) {
+				failure = e;
+			} catch (Error e) {
+				failure = e;
+			}
+			if(isCancelled){
+				return;
+			}
+			final AnalysisResult finalResult = result;
+			final Throwable finalFailure = failure;
+			callbackExecutor.execute(new Runnable() {
+				public void run() {
+					finish(finalResult, finalFailure);
+				}
+			});
+		}
+		
+		//regions are collected until the pending delivery takes them, as few callbacks as possible
+		public void onRegion(Region region) {
+			boolean isDeliveryPending;
+			synchronized(this){
+				isDeliveryPending = !foundRegions.isEmpty();
+				foundRegions.add(region);
+			}
+			if(!isDeliveryPending){
+				callbackExecutor.execute(new Runnable() {
+					public void run() {
+						deliverRegions();
+					}
+				});
+			}
+		}
+		
+		public void onProgress(float progress) {
+			final int newPercent = Math.round(progress * 100);
+			if(newPercent == percent){
+				return;
+			}
+			percent = newPercent;
+			callbackExecutor.execute(new Runnable() {
+				public void run() {
+					if(isCurrent()){
+						fireAnalysisProgress(newPercent);
+					}
 				}
-				selectedRegions.put(id, region);
-			} else {
-				for(int i=0;i<pixels.length;++i){
-					destPixels[pixels[i]] = ImageComponent.FOREGROUND;
+			});
+		}
+		
+		private void deliverRegions() {
+			List<Region> regions;
+			synchronized(this){
+				regions = foundRegions;
+				foundRegions = new ArrayList<Region>();
+			}
+			if(!isCurrent()){
+				return;
+			}
+			for(Region region : regions){
+				session.addRegion(region);
+			}
+			
+			Iterator<AnalysisListener> listenerIt = analysisListeners.iterator();
+			while(listenerIt.hasNext()){
+				listenerIt.next().onRegionsFound(regions);
+			}
+		}
+		
+		private void finish(AnalysisResult result, Throwable failure) {
+			if(!isCurrent()){
+				return;
+			}
+			isDone = true;
+			if(failure != null){
+				//the regions found so far are no result, drop them with their highlights
+				deselectAllRegions();
+				session.clear();
+				
+				Iterator<AnalysisListener> listenerIt = analysisListeners.iterator();
+				while(listenerIt.hasNext()){
+					listenerIt.next().onAnalysisFailed(failure);
 				}
+				return;
+			}
+			session.setResult(result);
+			//a region selected with its similar regions during the analysis only had the regions found so far
+			if(referenceRegionID != -1){
+				selectRegionAndSimilar(referenceRegionID);
 			}
-			image.setPixels(destPixels);
 			
-		} else {
-			System.err.println("No region with id " + id + " found.");
+			Iterator<AnalysisListener> listenerIt = analysisListeners.iterator();
+			while(listenerIt.hasNext()){
+				listenerIt.next().onAnalysisDone(result);
+			}
 		}
 	}
-
-	public void onImageChange(ImageComponent image) {
-		this.image = image;
-		this.sourcePixels = image.getPixels();
-		this.destPixels = java.util.Arrays.copyOf(sourcePixels,sourcePixels.length);
-		regionAnalyser.setImage(image);
-		analyse();
+	
+	public AnalysisSession getSession() {
+		return session;
+	}
+	
+	public void addSelectionListener(RegionSelectionListener listener){
+		selectionListeners.add(listener);
+	}
+	
+	public void removeSelectionListener(RegionSelectionListener listener){
+		selectionListeners.remove(listener);
+	}
+	
+	public void addAnalysisListener(AnalysisListener listener){
+		analysisListeners.add(listener);
 	}
 	
+	public void removeAnalysisListener(AnalysisListener listener){
+		analysisListeners.remove(listener);
+	}
+	
+	//default analyzer of the GUI, backed by the default region manager
 	private static class Holder {
-		private static final ImageAnalyzer INSTANCE = new ImageAnalyzer();
+		private static final ImageAnalyzer INSTANCE = new ImageAnalyzer(createSession(), ColorGenerator.getInstance());
+
+		//the display computes contours and moment features only for the regions it draws or compares
+		private static AnalysisSession createSession() {
+			AnalysisSession session = new AnalysisSession(RegionManager.getInstance(), Runtime.getRuntime().availableProcessors());
+			session.setFeatureSet(FeatureSet.GEOMETRIC);
+			return session;
+		}
 	}
 	
 	public static ImageAnalyzer getInstance() {
 		return Holder.INSTANCE;
 	}
 	
-	public void selectSimilarRegions(int regionID){			
-		boolean isOrientationSimilar;
-		boolean isEccentricitySimilar;
-		boolean isHuMomentSimilar[] = new boolean[5];
-
-		if(regionMgr.hasRegion(regionID)){
-			Region regionToCompare = regionMgr.getRegion(regionID);
-			
-			//go through all other regions and compare orientation, eccentricity and Hu moments
-			Iterator<Integer> regionIDIt = regionMgr.getRegionIDs();
-			while(regionIDIt.hasNext()){
-				isOrientationSimilar = false;
-				isEccentricitySimilar = false;
-				isHuMomentSimilar[0] = false;
-				isHuMomentSimilar[1] = false;
-				isHuMomentSimilar[2] = false;
-				isHuMomentSimilar[3] = false;
-				isHuMomentSimilar[4] = false;
-			
-				
-				Region currentRegion = regionMgr.getRegion(regionIDIt.next());
-				if(currentRegion.getID() != regionToCompare.getID()){
-					//orientation
-					if(currentRegion.getOrientationAngle() < (regionToCompare.getOrientationAngle() + orientationTreshold)
-							&& currentRegion.getOrientationAngle() > (regionToCompare.getOrientationAngle() - orientationTreshold)){
-						isOrientationSimilar = true;
-					}
-					
-					//eccentricity
-					if(currentRegion.getEccentricity() < (regionToCompare.getEccentricity() + eccentricityThreshold)
-							&& currentRegion.getEccentricity() > (regionToCompare.getEccentricity() - eccentricityThreshold)){
-						isEccentricitySimilar = true;
-					}
-					
-					//Hu moment #1
-					if(currentRegion.getHuMoment(1) < (regionToCompare.getHuMoment(1) + huTresholds[0])
-							&& currentRegion.getHuMoment(1) > (regionToCompare.getHuMoment(1) - huTresholds[0])){
-						//setRegionSelected(currentRegion.getID(), true);
-						isHuMomentSimilar[0] = true;
-					}
-					
-					//Hu moment #2
-					if(currentRegion.getHuMoment(2) < (regionToCompare.getHuMoment(2) + huTresholds[1])
-							&& currentRegion.getHuMoment(2) > (regionToCompare.getHuMoment(2) - huTresholds[1])){
-						//setRegionSelected(currentRegion.getID(), true);
-						isHuMomentSimilar[1] = true;
-					}
-					
-					//Hu moment #3
-					if(currentRegion.getHuMoment(3) < (regionToCompare.getHuMoment(3) + huTresholds[2])
-							&& currentRegion.getHuMoment(3) > (regionToCompare.getHuMoment(3) - huTresholds[2])){
-						//setRegionSelected(currentRegion.getID(), true);
-						isHuMomentSimilar[2] = true;
-					}
-					
-					//Hu moment #4
-					if(currentRegion.getHuMoment(4) < (regionToCompare.getHuMoment(4) + huTresholds[3])
-							&& currentRegion.getHuMoment(4) > (regionToCompare.getHuMoment(4) - huTresholds[3])){
-						//setRegionSelected(currentRegion.getID(), true);
-						isHuMomentSimilar[3] = true;
-					}
-					//Hu moment #5
-					if(currentRegion.getHuMoment(5) < (regionToCompare.getHuMoment(5) + huTresholds[4])
-							&& currentRegion.getHuMoment(5) > (regionToCompare.getHuMoment(5) - huTresholds[4])){
-						//setRegionSelected(currentRegion.getID(), true);
-						isHuMomentSimilar[4] = true;
-					}
-				}
-				
-				if(isOrientationSimilar
-						&& isEccentricitySimilar
-						&& isHuMomentSimilar[0]
-						&& isHuMomentSimilar[1]
-						&& isHuMomentSimilar[2]
-						&& isHuMomentSimilar[3]
-						&& isHuMomentSimilar[4]
-						                     )
-				{
-					setRegionSelected(currentRegion.getID(), true);
-				}
-			}
-		} else {
-			System.err.println("No region with id " + regionID + " found.");
+	public void selectSimilarRegions(int regionID){
+		Iterator<Integer> similarRegionIt = session.findSimilarRegions(regionID).iterator();
+		while(similarRegionIt.hasNext()){
+			highlight(similarRegionIt.next(), true);
 		}
-		
-		
+		fireSelectionChange();
 	}
 	
 	public void printRegionData(int regionID){
@@ -292,6 +445,9 @@ public class ImageAnalyzer implements ImageChangeListener {
 			if(region.hasParam(RegionParams.AREA)){
 				System.out.println("Area: " + region.getArea());
 			}
+			if(region.hasParam(RegionParams.PERIMETER)){
+				System.out.println("Perimeter: " + region.getPerimeter());
+			}
 			if(region.hasParam(RegionParams.COMPACTNESS)){
 				System.out.println("Compactness: " + region.getCompactness());
 			}
@@ -311,19 +467,37 @@ public class ImageAnalyzer implements ImageChangeListener {
 		}
 	}
 	
+	/**
+	 * Changes a threshold. If a region is selected with its similar regions,
+	 * only the regions whose similarity changes are selected or deselected.
+	 * Until the analysis has finished no search can be built and the
+	 * selection is redone when the result arrives.
+	 */
 	public void setHuTreshold(int num, float value){
-		num -= 1;
-		if(num >= 0 && num < huTresholds.length){
-			huTresholds[num] = value;
+		if(referenceRegionID != -1 && similaritySearch == null){
+			similaritySearch = session.createSimilaritySearch(referenceRegionID);
+			if(similaritySearch != null){
+				//the selection may predate the result, start from the search's similar regions
+				List<Integer> regionIDs = new ArrayList<Integer>();
+				for(int id : similaritySearch.getSimilarRegions()){
+					regionIDs.add(id);
+				}
+				regionIDs.add(referenceRegionID);
+				replaceSelection(regionIDs);
+			}
+		}
+		session.setHuTreshold(num, value);
+		
+		if(similaritySearch != null && num >= 1 && num <= 5){
+			int changedIDs[] = similaritySearch.setTolerance(num + 1, session.getHuTreshold(num));
+			for(int id : changedIDs){
+				highlight(id, similaritySearch.isSimilar(id));
+			}
+			fireSelectionChange();
 		}
 	}
 	
 	public double getHuTreshold(int num){
-		num -= 1;
-		if(num >= 0 && num < huTresholds.length){
-			return huTresholds[num];
-		}
-		
-		return 0;
+		return session.getHuTreshold(num);
 	}
 }
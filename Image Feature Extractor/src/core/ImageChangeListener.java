@@ -24,8 +24,8 @@ THE SOFTWARE.
 
 package core;
 
-import gui.ImageComponent;
+import java.awt.image.BufferedImage;
 
 public interface ImageChangeListener {
-	public void onImageChange(ImageComponent image);
+	public void onImageChange(BufferedImage image);
 }
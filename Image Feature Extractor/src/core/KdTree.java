@@ -0,0 +1,95 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+/**
+ * Arranges points in the order of an implicit k-d tree, shared by
+ * SimilarityIndex and GlyphDictionaryBuilder.
+ *
+ * The node of a range of points is its median on the feature depth % DIMS,
+ * the points before and after it form the subtrees. A payload value per
+ * point, such as a region id or a label, is moved along with it.
+ */
+class KdTree {
+
+	static final int DIMS = SimilarityIndex.FEATURE_COUNT;
+
+	private KdTree() {
+	}
+
+	//points holds DIMS values per point, the first count points are arranged
+	static void build(final double points[], final int payload[], final int count) {
+		build(points, payload, 0, count, 0);
+	}
+
+	private static void build(final double points[], final int payload[], final int from, final int to, final int depth) {
+		if (to - from <= 1) {
+			return;
+		}
+		int dim = depth % DIMS;
+		int median = (from + to) >>> 1;
+		select(points, payload, from, to - 1, median, dim);
+		build(points, payload, from, median, depth + 1);
+		build(points, payload, median + 1, to, depth + 1);
+	}
+
+	//moves the k-th smallest point of dimension dim in lo..hi to position k
+	private static void select(final double points[], final int payload[], int lo, int hi, final int k, final int dim) {
+		while (lo < hi) {
+			double pivot = points[((lo + hi) >>> 1) * DIMS + dim];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (points[i * DIMS + dim] < pivot) {
+					++i;
+				}
+				while (points[j * DIMS + dim] > pivot) {
+					--j;
+				}
+				if (i <= j) {
+					swap(points, payload, i++, j--);
+				}
+			}
+			if (k <= j) {
+				hi = j;
+			} else if (k >= i) {
+				lo = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private static void swap(final double points[], final int payload[], final int a, final int b) {
+		int value = payload[a];
+		payload[a] = payload[b];
+		payload[b] = value;
+		for (int dim = 0; dim < DIMS; ++dim) {
+			double coordinate = points[a * DIMS + dim];
+			points[a * DIMS + dim] = points[b * DIMS + dim];
+			points[b * DIMS + dim] = coordinate;
+		}
+	}
+}
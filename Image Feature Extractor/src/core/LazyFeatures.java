@@ -0,0 +1,63 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+/**
+ * Computes the features of a region that were left out at extraction from
+ * its runs and the label map of the analysis. Calls are serialized by the
+ * owning RegionTable.
+ */
+class LazyFeatures {
+
+	//region id + 1 per pixel
+	private final int labels[];
+	private final int width;
+	private final int height;
+
+	private final RegionAnalyzer regionAnalyser;
+	private final ContourTracer contourTracer;
+
+	LazyFeatures(final int labels[], final int width, final int height) {
+		this.labels = labels;
+		this.width = width;
+		this.height = height;
+		regionAnalyser = new RegionAnalyzer();
+		contourTracer = new ContourTracer();
+	}
+
+	void computeMomentFeatures(final RegionTable table, final int row) {
+		//contours are used if there are no runs and they were traced already, they are not traced for this
+		MomentAccumulator moments = regionAnalyser.computeMoments(table.getContours(row), table.getRuns(row),
+				table.getID(row));
+		regionAnalyser.setRegion(moments, table.getBoxX()[row], table.getBoxY()[row]);
+		regionAnalyser.setMomentFeatures(table, row);
+	}
+
+	void computeContours(final RegionTable table, final int row) {
+		RegionContours contours = contourTracer.traceRegion(labels, width, height, table.getID(row) + 1,
+				table.getBoxX()[row], table.getBoxY()[row], table.getBoxWidth()[row], table.getBoxHeight()[row]);
+		regionAnalyser.setContours(table.getRegion(row), contours);
+	}
+}
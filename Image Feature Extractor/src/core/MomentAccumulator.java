@@ -0,0 +1,354 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+/**
+ * Exact raw moments m00..m03 of a set of pixels.
+ *
+ * The sums are kept relative to an origin pixel (the first pixel of the
+ * region in raster order) so they stay small enough for long arithmetic.
+ * Accumulators of parts of the same region can be merged.
+ *
+ * The sums are exact as long as they fit into a long. The third order sums
+ * of a solid square exceed that from a side of about 8000 pixels, so on an
+ * overflow the accumulator switches to double sums, which keep about 16
+ * significant digits. isExact() tells which kind of sums are kept.
+ *
+ * An accumulator of order 1 only sums m00, m10 and m01, which is enough
+ * for the area and centroid.
+ */
+public class MomentAccumulator {
+
+	public static final int MAX_ORDER = 3;
+
+	private int originX;
+	private int originY;
+	private final int order;
+
+	private long m00;
+	private long m10;
+	private long m01;
+	private long m20;
+	private long m11;
+	private long m02;
+	private long m30;
+	private long m21;
+	private long m12;
+	private long m03;
+
+	//sums after an overflow of the long sums, indexed by p * 4 + q
+	private double approximate[];
+
+	public MomentAccumulator(final int originX, final int originY) {
+		this(originX, originY, MAX_ORDER);
+	}
+
+	public MomentAccumulator(final int originX, final int originY, final int order) {
+		if (order != 1 && order != MAX_ORDER) throw new IllegalArgumentException("Unsupported moment order " + order);
+		this.originX = originX;
+		this.originY = originY;
+		this.order = order;
+	}
+
+	public void add(final int xPos, final int yPos) {
+		addRun(xPos, xPos, yPos);
+	}
+
+	//adds the pixels xStart..xEnd (inclusive) of a row
+	public void addRun(final int xStart, final int xEnd, final int yPos) {
+		long n = xEnd - xStart + 1;
+		long y = yPos - originY;
+
+		//power sums of the x positions
+		long startX = xStart - originX - 1;
+		long endX = xEnd - originX;
+		if (approximate == null) {
+			try {
+				long sumX = Math.subtractExact(sumOfPowers1(endX), sumOfPowers1(startX));
+				if (order == 1) {
+					addRow(n, sumX, 0, 0, y);
+					return;
+				}
+				long sumXX = Math.subtractExact(sumOfPowers2(endX), sumOfPowers2(startX));
+				//the cubic power sum is the square of the linear one
+				long sumXXX = Math.multiplyExact(sumX, Math.addExact(sumOfPowers1(endX), sumOfPowers1(startX)));
+				addRow(n, sumX, sumXX, sumXXX, y);
+				return;
+			} catch (ArithmeticException e) {
+				switchToDouble();
+			}
+		}
+		double sumX = approximateSumOfPowers1(endX) - approximateSumOfPowers1(startX);
+		double sumXX = approximateSumOfPowers2(endX) - approximateSumOfPowers2(startX);
+		double sumXXX = sumX * (approximateSumOfPowers1(endX) + approximateSumOfPowers1(startX));
+		addApproximateRow(n, sumX, sumXX, sumXXX, y);
+	}
+
+	/**
+	 * Adds (sign 1) or subtracts (sign -1) the power sums of the row up to
+	 * xEnd. A run a..b is the sum up to b minus the sum up to a - 1, so a
+	 * region can be summed from the vertical edges of its contours.
+	 */
+	void addRowPrefix(final int xEnd, final int yPos, final int sign) {
+		long k = xEnd - originX;
+		long y = yPos - originY;
+
+		if (approximate == null) {
+			try {
+				long sumX = sumOfPowers1(k);
+				addRow(k * sign, sumX * sign, sumOfPowers2(k) * sign, Math.multiplyExact(sumX, sumX) * sign, y);
+				return;
+			} catch (ArithmeticException e) {
+				switchToDouble();
+			}
+		}
+		double sumX = approximateSumOfPowers1(k);
+		addApproximateRow(k * sign, sumX * sign, approximateSumOfPowers2(k) * sign, sumX * sumX * sign, y);
+	}
+
+	//adds the power sums of a row, the sums are only changed if none of them overflows
+	private void addRow(final long sumN, final long sumX, final long sumXX, final long sumXXX, final long y) {
+		long new00 = Math.addExact(m00, sumN);
+		long new10 = Math.addExact(m10, sumX);
+		long new01 = Math.addExact(m01, Math.multiplyExact(sumN, y));
+		if (order == 1) {
+			m00 = new00;
+			m10 = new10;
+			m01 = new01;
+			return;
+		}
+		long yy = Math.multiplyExact(y, y);
+		long new20 = Math.addExact(m20, sumXX);
+		long new11 = Math.addExact(m11, Math.multiplyExact(sumX, y));
+		long new02 = Math.addExact(m02, Math.multiplyExact(sumN, yy));
+		long new30 = Math.addExact(m30, sumXXX);
+		long new21 = Math.addExact(m21, Math.multiplyExact(sumXX, y));
+		long new12 = Math.addExact(m12, Math.multiplyExact(sumX, yy));
+		long new03 = Math.addExact(m03, Math.multiplyExact(Math.multiplyExact(sumN, yy), y));
+
+		m00 = new00;
+		m10 = new10;
+		m01 = new01;
+		m20 = new20;
+		m11 = new11;
+		m02 = new02;
+		m30 = new30;
+		m21 = new21;
+		m12 = new12;
+		m03 = new03;
+	}
+
+	private void addApproximateRow(final double sumN, final double sumX, final double sumXX, final double sumXXX,
+			final double y) {
+		double sums[] = approximate;
+		sums[0] += sumN;
+		sums[4] += sumX;
+		sums[1] += sumN * y;
+		if (order == 1) {
+			return;
+		}
+		double yy = y * y;
+		sums[8] += sumXX;
+		sums[5] += sumX * y;
+		sums[2] += sumN * yy;
+		sums[12] += sumXXX;
+		sums[9] += sumXX * y;
+		sums[6] += sumX * yy;
+		sums[3] += sumN * yy * y;
+	}
+
+	//polynomials with P(k) - P(k-1) = k^p, so the sum over a..b is P(b) - P(a-1)
+	private static long sumOfPowers1(final long k) {
+		return Math.multiplyExact(k, k + 1) / 2;
+	}
+
+	private static long sumOfPowers2(final long k) {
+		return Math.multiplyExact(Math.multiplyExact(k, k + 1), 2 * k + 1) / 6;
+	}
+
+	private static double approximateSumOfPowers1(final double k) {
+		return k * (k + 1) / 2;
+	}
+
+	private static double approximateSumOfPowers2(final double k) {
+		return k * (k + 1) * (2 * k + 1) / 6;
+	}
+
+	//continues with double sums from the current long sums
+	private void switchToDouble() {
+		double sums[] = new double[16];
+		sums[0] = m00;
+		sums[4] = m10;
+		sums[1] = m01;
+		sums[8] = m20;
+		sums[5] = m11;
+		sums[2] = m02;
+		sums[12] = m30;
+		sums[9] = m21;
+		sums[6] = m12;
+		sums[3] = m03;
+		approximate = sums;
+	}
+
+	//adds the moments of another part of the same region, both must have the same order
+	public void merge(final MomentAccumulator other) {
+		if (other.order != order) throw new IllegalArgumentException("Moment orders differ: " + order + ", " + other.order);
+		//shift the other sums to this origin
+		long shiftX = other.originX - originX;
+		long shiftY = other.originY - originY;
+		if (approximate == null && other.approximate == null) {
+			try {
+				mergeExact(other, shiftX, shiftY);
+				return;
+			} catch (ArithmeticException e) {
+				switchToDouble();
+			}
+		}
+		if (approximate == null) {
+			switchToDouble();
+		}
+		double sums[] = approximate;
+		double dx = shiftX;
+		double dy = shiftY;
+		double o00 = other.getMoment(0, 0);
+		double o10 = other.getMoment(1, 0);
+		double o01 = other.getMoment(0, 1);
+		if (order == 1) {
+			sums[4] += o10 + dx * o00;
+			sums[1] += o01 + dy * o00;
+			sums[0] += o00;
+			return;
+		}
+		double o20 = other.getMoment(2, 0);
+		double o11 = other.getMoment(1, 1);
+		double o02 = other.getMoment(0, 2);
+		double dxx = dx * dx;
+		double dyy = dy * dy;
+
+		sums[12] += other.getMoment(3, 0) + 3 * dx * o20 + 3 * dxx * o10 + dxx * dx * o00;
+		sums[9] += other.getMoment(2, 1) + dy * o20 + 2 * dx * o11 + 2 * dx * dy * o10 + dxx * o01 + dxx * dy * o00;
+		sums[6] += other.getMoment(1, 2) + dx * o02 + 2 * dy * o11 + 2 * dx * dy * o01 + dyy * o10 + dx * dyy * o00;
+		sums[3] += other.getMoment(0, 3) + 3 * dy * o02 + 3 * dyy * o01 + dyy * dy * o00;
+		sums[8] += o20 + 2 * dx * o10 + dxx * o00;
+		sums[5] += o11 + dx * o01 + dy * o10 + dx * dy * o00;
+		sums[2] += o02 + 2 * dy * o01 + dyy * o00;
+		sums[4] += o10 + dx * o00;
+		sums[1] += o01 + dy * o00;
+		sums[0] += o00;
+	}
+
+	//the sums are only changed if none of them overflows
+	private void mergeExact(final MomentAccumulator other, final long dx, final long dy) {
+		long new10 = add(m10, other.m10, mul(dx, other.m00));
+		long new01 = add(m01, other.m01, mul(dy, other.m00));
+		long new00 = Math.addExact(m00, other.m00);
+		if (order == 1) {
+			m10 = new10;
+			m01 = new01;
+			m00 = new00;
+			return;
+		}
+		long dxx = mul(dx, dx);
+		long dyy = mul(dy, dy);
+		long dxy = mul(dx, dy);
+
+		long new30 = add(add(m30, other.m30, mul(3 * dx, other.m20)), mul(mul(3, dxx), other.m10), mul(mul(dxx, dx), other.m00));
+		long new21 = add(add(m21, other.m21, mul(dy, other.m20)), add(mul(2 * dx, other.m11), mul(2 * dxy, other.m10),
+				mul(dxx, other.m01)), mul(mul(dxx, dy), other.m00));
+		long new12 = add(add(m12, other.m12, mul(dx, other.m02)), add(mul(2 * dy, other.m11), mul(2 * dxy, other.m01),
+				mul(dyy, other.m10)), mul(mul(dx, dyy), other.m00));
+		long new03 = add(add(m03, other.m03, mul(3 * dy, other.m02)), mul(mul(3, dyy), other.m01), mul(mul(dyy, dy), other.m00));
+		long new20 = add(add(m20, other.m20, mul(2 * dx, other.m10)), mul(dxx, other.m00), 0);
+		long new11 = add(add(m11, other.m11, mul(dx, other.m01)), mul(dy, other.m10), mul(dxy, other.m00));
+		long new02 = add(add(m02, other.m02, mul(2 * dy, other.m01)), mul(dyy, other.m00), 0);
+
+		m30 = new30;
+		m21 = new21;
+		m12 = new12;
+		m03 = new03;
+		m20 = new20;
+		m11 = new11;
+		m02 = new02;
+		m10 = new10;
+		m01 = new01;
+		m00 = new00;
+	}
+
+	private static long mul(final long a, final long b) {
+		return Math.multiplyExact(a, b);
+	}
+
+	private static long add(final long a, final long b, final long c) {
+		return Math.addExact(Math.addExact(a, b), c);
+	}
+
+	//raw moment relative to the origin, p + q <= getOrder()
+	public double getMoment(final int p, final int q) {
+		if (p + q > order && p + q <= MAX_ORDER) throw new IllegalStateException("Moment " + p + "," + q + " not accumulated");
+		if (p < 0 || q < 0 || p + q > MAX_ORDER) throw new IllegalArgumentException("Moment order too high: " + p + "," + q);
+		if (approximate != null) {
+			return approximate[p * 4 + q];
+		}
+		switch (p * 4 + q) {
+		case 0:
+			return m00;
+		case 4:
+			return m10;
+		case 1:
+			return m01;
+		case 8:
+			return m20;
+		case 5:
+			return m11;
+		case 2:
+			return m02;
+		case 12:
+			return m30;
+		case 9:
+			return m21;
+		case 6:
+			return m12;
+		default:
+			return m03;
+		}
+	}
+
+	//false once a sum has overflowed the long range and double sums are kept
+	public boolean isExact() {
+		return approximate == null;
+	}
+
+	public int getOrder() {
+		return order;
+	}
+
+	public int getOriginX() {
+		return originX;
+	}
+
+	public int getOriginY() {
+		return originY;
+	}
+}
@@ -0,0 +1,421 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * Read-only view of the foreground of an image, row by row.
+ *
+ * The factories read byte, int and bit packed data buffers directly, other
+ * layouts fall back to the color model. Rows may be read by several threads
+ * at the same time.
+ */
+public abstract class PixelSource {
+
+	protected final int width;
+	protected final int height;
+
+	protected PixelSource(final int width, final int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	//writes 1 for each foreground pixel of the row and 0 for background to dest[0..width-1]
+	public abstract void getForegroundRow(int yPos, byte dest[]);
+
+	/**
+	 * Writes the row as BinaryImage.getWordCount(width) words, pixel x is
+	 * bit (x & 63) of word x >> 6.
+	 */
+	public void getForegroundBits(final int yPos, final long dest[]) {
+		byte row[] = new byte[width];
+		getForegroundRow(yPos, row);
+		packBits(row, dest, width);
+	}
+
+	protected static void packBits(final byte row[], final long dest[], final int width) {
+		int wordCount = BinaryImage.getWordCount(width);
+		for (int word = 0; word < wordCount; ++word) {
+			long bits = 0;
+			int end = Math.min(64, width - (word << 6));
+			for (int bit = 0; bit < end; ++bit) {
+				bits |= (long) row[(word << 6) + bit] << bit;
+			}
+			dest[word] = bits;
+		}
+	}
+
+	/**
+	 * Packed ARGB pixels. Only pixels equal to Extractor.FOREGROUND are
+	 * foreground.
+	 */
+	public static PixelSource of(final int pixels[], final int width, final int height) {
+		if (pixels == null || pixels.length < width * height) throw new IndexOutOfBoundsException();
+		return new PackedIntSource(width, height, pixels, 0, width, 0xFFFFFFFF, Extractor.FOREGROUND);
+	}
+
+	/**
+	 * Pixels whose color is Extractor.FOREGROUND (opaque black) are
+	 * foreground, the same as comparing the result of getRGB.
+	 */
+	public static PixelSource of(final BufferedImage image) {
+		Raster raster = image.getRaster();
+		SampleModel sampleModel = raster.getSampleModel();
+		DataBuffer dataBuffer = raster.getDataBuffer();
+		ColorModel colorModel = image.getColorModel();
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		PixelSource source = null;
+		boolean isPackedInt = sampleModel instanceof SinglePixelPackedSampleModel && dataBuffer instanceof DataBufferInt;
+		boolean isByte = sampleModel instanceof ComponentSampleModel && dataBuffer instanceof DataBufferByte;
+		boolean isPackedBits = sampleModel instanceof MultiPixelPackedSampleModel && dataBuffer instanceof DataBufferByte;
+
+		switch (image.getType()) {
+		case BufferedImage.TYPE_INT_ARGB:
+		case BufferedImage.TYPE_INT_ARGB_PRE:
+			if (isPackedInt) {
+				source = createPackedIntSource(raster, 0xFFFFFFFF, Extractor.FOREGROUND);
+			}
+			break;
+		case BufferedImage.TYPE_INT_RGB:
+		case BufferedImage.TYPE_INT_BGR:
+			if (isPackedInt) {
+				source = createPackedIntSource(raster, 0x00FFFFFF, 0);
+			}
+			break;
+		case BufferedImage.TYPE_3BYTE_BGR:
+		case BufferedImage.TYPE_4BYTE_ABGR:
+		case BufferedImage.TYPE_4BYTE_ABGR_PRE:
+			//color bands are zero, the alpha band (if any) is opaque
+			if (isByte) {
+				source = createByteSource(raster, 3, raster.getNumBands() > 3, null);
+			}
+			break;
+		case BufferedImage.TYPE_BYTE_GRAY:
+		case BufferedImage.TYPE_BYTE_INDEXED:
+			if (isByte) {
+				source = createByteSource(raster, 1, false, createLookup(colorModel, 8));
+			}
+			break;
+		case BufferedImage.TYPE_BYTE_BINARY:
+			if (isPackedBits) {
+				int bits = ((MultiPixelPackedSampleModel) sampleModel).getPixelBitStride();
+				source = createBitSource(raster, createLookup(colorModel, bits));
+			}
+			break;
+		}
+		return source != null ? source : new RGBSource(image);
+	}
+
+	/**
+	 * Raster without color model. A pixel is foreground if its first (up to
+	 * three) bands are zero, so black for gray, binary and RGB rasters.
+	 */
+	public static PixelSource of(final Raster raster) {
+		SampleModel sampleModel = raster.getSampleModel();
+		DataBuffer dataBuffer = raster.getDataBuffer();
+
+		if (sampleModel instanceof MultiPixelPackedSampleModel && dataBuffer instanceof DataBufferByte) {
+			int bits = ((MultiPixelPackedSampleModel) sampleModel).getPixelBitStride();
+			boolean lookup[] = new boolean[1 << bits];
+			lookup[0] = true;
+			return createBitSource(raster, lookup);
+		}
+		PixelSource source = null;
+		if (sampleModel instanceof ComponentSampleModel && dataBuffer instanceof DataBufferByte) {
+			source = createByteSource(raster, Math.min(3, raster.getNumBands()), false, null);
+		}
+		return source != null ? source : new RasterSource(raster);
+	}
+
+	//foreground flag for every pixel value of an indexed, gray or binary color model
+	private static boolean[] createLookup(final ColorModel colorModel, final int bits) {
+		boolean lookup[] = new boolean[1 << bits];
+		for (int value = 0; value < lookup.length; ++value) {
+			int rgb = colorModel instanceof IndexColorModel
+					? colorModel.getRGB(value)
+					: colorModel.getRGB(new byte[] { (byte) value });
+			lookup[value] = rgb == Extractor.FOREGROUND;
+		}
+		return lookup;
+	}
+
+	private static PixelSource createPackedIntSource(final Raster raster, final int mask, final int value) {
+		SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+		DataBufferInt dataBuffer = (DataBufferInt) raster.getDataBuffer();
+		int stride = sampleModel.getScanlineStride();
+		int offset = dataBuffer.getOffset() + sampleModel.getOffset(raster.getMinX() - raster.getSampleModelTranslateX(),
+				raster.getMinY() - raster.getSampleModelTranslateY());
+		return new PackedIntSource(raster.getWidth(), raster.getHeight(), dataBuffer.getData(), offset, stride, mask, value);
+	}
+
+	//null if the bands are not interleaved
+	private static PixelSource createByteSource(final Raster raster, final int colorBands, final boolean hasAlpha,
+			final boolean lookup[]) {
+		ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+		DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+
+		//all bands have to be interleaved in one bank
+		int bankIndices[] = sampleModel.getBankIndices();
+		for (int band = 1; band < bankIndices.length; ++band) {
+			if (bankIndices[band] != bankIndices[0]) {
+				return null;
+			}
+		}
+		int bank = bankIndices[0];
+		int bandOffsets[] = sampleModel.getBandOffsets();
+		int stride = sampleModel.getScanlineStride();
+		int pixelStride = sampleModel.getPixelStride();
+		int offset = dataBuffer.getOffsets()[bank]
+				+ (raster.getMinY() - raster.getSampleModelTranslateY()) * stride
+				+ (raster.getMinX() - raster.getSampleModelTranslateX()) * pixelStride;
+
+		int colorOffsets[] = new int[colorBands];
+		for (int band = 0; band < colorBands; ++band) {
+			colorOffsets[band] = offset + bandOffsets[band];
+		}
+		int alphaOffset = hasAlpha ? offset + bandOffsets[colorBands] : -1;
+		return new ByteSource(raster.getWidth(), raster.getHeight(), dataBuffer.getData(bank),
+				stride, pixelStride, colorOffsets, alphaOffset, lookup);
+	}
+
+	private static PixelSource createBitSource(final Raster raster, final boolean lookup[]) {
+		MultiPixelPackedSampleModel sampleModel = (MultiPixelPackedSampleModel) raster.getSampleModel();
+		DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+		int bits = sampleModel.getPixelBitStride();
+		int stride = sampleModel.getScanlineStride();
+
+		//bit position of the first pixel of the raster
+		int xPos = raster.getMinX() - raster.getSampleModelTranslateX();
+		int yPos = raster.getMinY() - raster.getSampleModelTranslateY();
+		long firstBit = ((long) dataBuffer.getOffset() + (long) yPos * stride) * 8
+				+ (long) xPos * bits + sampleModel.getDataBitOffset();
+		return new BitSource(raster.getWidth(), raster.getHeight(), dataBuffer.getData(), firstBit, stride, bits, lookup);
+	}
+
+	//int per pixel, foreground if (pixel & mask) == value
+	private static class PackedIntSource extends PixelSource {
+		private final int data[];
+		private final int offset;
+		private final int stride;
+		private final int mask;
+		private final int value;
+
+		PackedIntSource(final int width, final int height, final int data[], final int offset, final int stride,
+				final int mask, final int value) {
+			super(width, height);
+			this.data = data;
+			this.offset = offset;
+			this.stride = stride;
+			this.mask = mask;
+			this.value = value;
+		}
+
+		public void getForegroundRow(final int yPos, final byte dest[]) {
+			int rowStart = offset + yPos * stride;
+			for (int xPos = 0; xPos < width; ++xPos) {
+				dest[xPos] = (data[rowStart + xPos] & mask) == value ? (byte) 1 : 0;
+			}
+		}
+
+		//packs the bits directly, without a row of bytes
+		public void getForegroundBits(final int yPos, final long dest[]) {
+			int rowStart = offset + yPos * stride;
+			int wordCount = BinaryImage.getWordCount(width);
+			for (int word = 0; word < wordCount; ++word) {
+				int start = rowStart + (word << 6);
+				int end = Math.min(64, width - (word << 6));
+				long bits = 0;
+				for (int bit = 0; bit < end; ++bit) {
+					bits |= (long) ((data[start + bit] & mask) == value ? 1 : 0) << bit;
+				}
+				dest[word] = bits;
+			}
+		}
+	}
+
+	//interleaved bytes, foreground by lookup of a single band or if all color bands are zero
+	private static class ByteSource extends PixelSource {
+		private final byte data[];
+		private final int stride;
+		private final int pixelStride;
+		private final int colorOffsets[];
+		private final int alphaOffset;
+		private final boolean lookup[];
+
+		ByteSource(final int width, final int height, final byte data[], final int stride, final int pixelStride,
+				final int colorOffsets[], final int alphaOffset, final boolean lookup[]) {
+			super(width, height);
+			this.data = data;
+			this.stride = stride;
+			this.pixelStride = pixelStride;
+			this.colorOffsets = colorOffsets;
+			this.alphaOffset = alphaOffset;
+			this.lookup = lookup;
+		}
+
+		public void getForegroundRow(final int yPos, final byte dest[]) {
+			int rowStart = yPos * stride;
+			if (lookup != null) {
+				int index = colorOffsets[0] + rowStart;
+				for (int xPos = 0; xPos < width; ++xPos, index += pixelStride) {
+					dest[xPos] = lookup[data[index] & 0xFF] ? (byte) 1 : 0;
+				}
+				return;
+			}
+
+			for (int xPos = 0; xPos < width; ++xPos) {
+				int pixelStart = rowStart + xPos * pixelStride;
+				boolean isForeground = alphaOffset < 0 || data[alphaOffset + pixelStart] == (byte) 0xFF;
+				for (int band = 0; band < colorOffsets.length && isForeground; ++band) {
+					isForeground = data[colorOffsets[band] + pixelStart] == 0;
+				}
+				dest[xPos] = isForeground ? (byte) 1 : 0;
+			}
+		}
+	}
+
+	//1, 2 or 4 bits per pixel, most significant bits first
+	private static class BitSource extends PixelSource {
+		//bits of a byte in reverse order
+		private static final long REVERSED[] = new long[256];
+		static {
+			for (int value = 0; value < 256; ++value) {
+				REVERSED[value] = Integer.reverse(value) >>> 24;
+			}
+		}
+
+		private final byte data[];
+		private final long firstBit;
+		private final int stride;
+		private final int bits;
+		private final boolean lookup[];
+
+		BitSource(final int width, final int height, final byte data[], final long firstBit, final int stride,
+				final int bits, final boolean lookup[]) {
+			super(width, height);
+			this.data = data;
+			this.firstBit = firstBit;
+			this.stride = stride;
+			this.bits = bits;
+			this.lookup = lookup;
+		}
+
+		public void getForegroundRow(final int yPos, final byte dest[]) {
+			long bit = firstBit + (long) yPos * stride * 8;
+			int mask = (1 << bits) - 1;
+			for (int xPos = 0; xPos < width; ++xPos, bit += bits) {
+				int sample = (data[(int) (bit >>> 3)] >> (8 - bits - (int) (bit & 7))) & mask;
+				dest[xPos] = lookup[sample] ? (byte) 1 : 0;
+			}
+		}
+
+		public void getForegroundBits(final int yPos, final long dest[]) {
+			long bit = firstBit + (long) yPos * stride * 8;
+			if (bits != 1 || (bit & 7) != 0 || lookup[0] == lookup[1]) {
+				super.getForegroundBits(yPos, dest);
+				return;
+			}
+
+			//one bit per pixel on a byte boundary, eight pixels per step
+			int index = (int) (bit >>> 3);
+			int invert = lookup[1] ? 0 : 0xFF;
+			int wordCount = BinaryImage.getWordCount(width);
+			int byteCount = (width + 7) >>> 3;
+			for (int word = 0; word < wordCount; ++word) {
+				long value = 0;
+				int end = Math.min(8, byteCount - (word << 3));
+				for (int part = 0; part < end; ++part) {
+					value |= REVERSED[(data[index++] & 0xFF) ^ invert] << (part << 3);
+				}
+				dest[word] = value;
+			}
+			//clear the padding bits of the last byte
+			if ((width & 63) != 0) {
+				dest[wordCount - 1] &= (1L << (width & 63)) - 1;
+			}
+		}
+	}
+
+	//any other image, converted through the color model
+	private static class RGBSource extends PixelSource {
+		private final BufferedImage image;
+
+		RGBSource(final BufferedImage image) {
+			super(image.getWidth(), image.getHeight());
+			this.image = image;
+		}
+
+		public void getForegroundRow(final int yPos, final byte dest[]) {
+			int row[] = image.getRGB(0, yPos, width, 1, null, 0, width);
+			for (int xPos = 0; xPos < width; ++xPos) {
+				dest[xPos] = row[xPos] == Extractor.FOREGROUND ? (byte) 1 : 0;
+			}
+		}
+	}
+
+	//any other raster, first (up to three) bands zero
+	private static class RasterSource extends PixelSource {
+		private final Raster raster;
+
+		RasterSource(final Raster raster) {
+			super(raster.getWidth(), raster.getHeight());
+			this.raster = raster;
+		}
+
+		public void getForegroundRow(final int yPos, final byte dest[]) {
+			int bands = raster.getNumBands();
+			int colorBands = Math.min(3, bands);
+			int row[] = raster.getPixels(raster.getMinX(), raster.getMinY() + yPos, width, 1, (int[]) null);
+			for (int xPos = 0; xPos < width; ++xPos) {
+				boolean isForeground = true;
+				for (int band = 0; band < colorBands && isForeground; ++band) {
+					isForeground = row[xPos * bands + band] == 0;
+				}
+				dest[xPos] = isForeground ? (byte) 1 : 0;
+			}
+		}
+	}
+}
@@ -24,134 +24,193 @@ THE SOFTWARE.
 
 package core;
 
+/**
+ * Features of one region. A region is a view of a row of a RegionTable,
+ * regions created with an id alone get a table of their own, so many
+ * regions should be added as rows of one table instead. Features left out
+ * at extraction are computed on the first call of their getter.
+ */
 public class Region {
 	
 	public static enum RegionParams {
 		PERIMETER, AREA, COMPACTNESS, BOUNDING_BOX, CENTROID, ORIENTATION, ECCENTRICITY
 	}
-	private int id;
-	private float perimeter;
-	private float area;
-	private float compactness;
-	private BoundingBox boundingBox;
-	private Centroid centroid;
-	private double orientationAngle;
-	private int pixels[];
-	private double huMoments[];
-	private double eccentricity;
+	private final RegionTable table;
+	private final int row;
 	
 	public Region(int id){
-		this.id = id;
-		perimeter = 0.0f;
-		area = 0.0f;
-		compactness = 0.0f;
-		orientationAngle = 0;
-		huMoments = new double[5];
+		table = new RegionTable(1);
+		row = table.addRow(id);
+	}
+	
+	Region(RegionTable table, int row){
+		this.table = table;
+		this.row = row;
 	}
 	
 	public boolean hasParam(RegionParams type){
 		switch(type){
 		case PERIMETER:
-			return perimeter != 0.0f;
+			return getPerimeter() != 0.0f;
 		case AREA:
-			return area != 0.0f;
+			return getArea() != 0.0f;
 		case COMPACTNESS:
-			return compactness != 0.0f;
+			return getCompactness() != 0.0f;
 		case BOUNDING_BOX:
-			return boundingBox != null;
+			return table.hasBoundingBox(row);
 		case CENTROID:
-			return centroid != null;
+			return table.hasCentroid(row);
 		case ORIENTATION:
-			return orientationAngle != 0;
+			return getOrientationAngle() != 0;
 		case ECCENTRICITY:
-			return eccentricity != 0;
+			return getEccentricity() != 0;
 		default:
 				return false;
 		}
 	}
 
 	public float getPerimeter() {
-		return perimeter;
+		table.requireContours(row);
+		return table.getPerimeter()[row];
 	}
 
 	public void setPerimeter(float perimeter) {
-		this.perimeter = perimeter;
+		table.setPerimeter(row, perimeter);
 	}
 
 	public float getArea() {
-		return area;
+		return table.getArea()[row];
 	}
 
 	public void setArea(float area) {
-		this.area = area;
+		table.setArea(row, area);
 	}
 
 	public float getCompactness() {
-		return compactness;
+		table.requireContours(row);
+		return table.getCompactness()[row];
 	}
 
 	public void setCompactness(float compactness) {
-		this.compactness = compactness;
+		table.setCompactness(row, compactness);
 	}
 
+	//a copy, changes have to be written back with setBoundingBox
 	public BoundingBox getBoundingBox() {
-		return boundingBox;
+		if (!table.hasBoundingBox(row)) {
+			return null;
+		}
+		return new BoundingBox(table.getBoxX()[row], table.getBoxY()[row],
+				table.getBoxWidth()[row], table.getBoxHeight()[row]);
 	}
 
 	public void setBoundingBox(BoundingBox boundingBox) {
-		this.boundingBox = boundingBox;
+		if (boundingBox == null) {
+			table.clearBoundingBox(row);
+		} else {
+			table.setBoundingBox(row, boundingBox.getX(), boundingBox.getY(),
+					boundingBox.getWidth(), boundingBox.getHeight());
+		}
 	}
 
 	public Centroid getCentroid() {
-		return centroid;
+		if (!table.hasCentroid(row)) {
+			return null;
+		}
+		return new Centroid(table.getCentroidX()[row], table.getCentroidY()[row]);
 	}
 
 	public void setCentroid(Centroid centroid) {
-		this.centroid = centroid;
+		if (centroid == null) {
+			table.clearCentroid(row);
+		} else {
+			table.setCentroid(row, centroid.getX(), centroid.getY());
+		}
 	}
 	
 	public int getID(){
-		return id;
+		return table.getID(row);
 	}
 
 	public double getOrientationAngle() {
-		return orientationAngle;
+		table.requireMomentFeatures(row);
+		return table.getOrientationAngle()[row];
 	}
 
 	public void setOrientationAngle(double orientationAngle) {
-		this.orientationAngle = orientationAngle;
+		table.setOrientationAngle(row, orientationAngle);
 	}
 
-	public int[] getPixels() {
-		return pixels;
+	public RegionRuns getRuns() {
+		return table.getRuns(row);
 	}
 
-	public void setPixels(int[] pixels) {
-		this.pixels = pixels;
+	public void setRuns(RegionRuns runs) {
+		table.setRuns(row, runs);
+	}
+
+	public RegionContours getContours() {
+		table.requireContours(row);
+		return table.getContours(row);
+	}
+
+	public void setContours(RegionContours contours) {
+		table.setContours(row, contours);
 	}
 
 	public double getHuMoment(int num) {
-		num -=1;
-		if(num >= 0 && num < huMoments.length)
+		if(num >= 1 && num <= RegionTable.HU_MOMENT_COUNT)
 		{
-			return huMoments[num];
+			table.requireMomentFeatures(row);
+			return table.getHuMoment(row, num);
 		}
 		
 		return 0;
 	}
 
 	public void setHuMoment(int num, double value) {
-		num -=1;
-		if(num >= 0 && num < huMoments.length){
-			this.huMoments[num] = value;
+		if(num >= 1 && num <= RegionTable.HU_MOMENT_COUNT){
+			table.setHuMoment(row, num, value);
 		}
 	}
 
 	public double getEccentricity() {
-		return eccentricity;
+		table.requireMomentFeatures(row);
+		return table.getEccentricity()[row];
 	}
 
 	public void setEccentricity(double eccentricity) {
-		this.eccentricity = eccentricity;
+		table.setEccentricity(row, eccentricity);
+	}
+
+	//value of a feature added by a feature extractor, NaN if there is no such feature
+	public double getFeature(String name) {
+		int column = table.getColumnIndex(name);
+		if (column < 0) {
+			return Double.NaN;
+		}
+		return table.getValue(row, column);
+	}
+
+	public RegionTable getTable() {
+		return table;
+	}
+
+	public int getRow() {
+		return row;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof Region)) {
+			return false;
+		}
+		Region region = (Region) other;
+		return region.table == table && region.row == row;
+	}
+
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(table) * 31 + row;
 	}
 }
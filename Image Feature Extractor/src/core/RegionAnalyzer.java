@@ -24,219 +24,149 @@ THE SOFTWARE.
 
 package core;
 
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Queue;
-
-import utils.ColorGenerator;
-
-import gui.ImageComponent;
-
+/**
+ * Computes the features of a region in closed form from its raw moments.
+ */
 public class RegionAnalyzer {
 
-	private int regionSize;
 	private int upperBound;
 	private int leftBound;
-	private int lowerBound;
-	private int rightBound;
-
-	private ColorGenerator colorGenerator;
 
-	private ImageComponent image;
-	private int sourcePixels[];
-	private int destPixels[];
+	private MomentAccumulator moments;
 	private double area;
 	private double centroidX;
 	private double centroidY;
 	private double mu00;
-	
-	private LinkedList<Pixel> pixels;
-
-	Queue<Integer> floodFillQueue;
 
 	public RegionAnalyzer() {
-		colorGenerator = ColorGenerator.getInstance();
-		floodFillQueue = new LinkedList<Integer>();
-
-		regionSize = 0;
 		upperBound = 0;
 		leftBound = 0;
-		lowerBound = 0;
-		rightBound = 0;
 		area = 0;
 		centroidX = 0;
 		centroidY = 0;
 		mu00 = 0;
-		pixels = new LinkedList<Pixel>();
-
 	}
 
-	//resets the pixels to their original state
-	public void reset() {	
-		if(image != null){
-			this.destPixels = java.util.Arrays.copyOf(sourcePixels,sourcePixels.length);
-		}
-	}
-
-	public void setImage(ImageComponent image) {
-		this.image = image;
-		this.sourcePixels = image.getPixels();
-		this.destPixels = java.util.Arrays.copyOf(sourcePixels,sourcePixels.length);
+	//appends a row with all features of the moments and bounds to the table, returns the row
+	public int addRegion(final RegionTable table, final int id, final MomentAccumulator moments,
+			final int leftBound, final int upperBound, final int rightBound, final int lowerBound) {
+		int row = addGeometry(table, id, moments, leftBound, upperBound, rightBound, lowerBound);
+		setMomentFeatures(table, row);
+		return row;
 	}
 
-	public void fill(final int pixelStartIndex) {
-		upperBound = 0;
-		leftBound = 0;
-		lowerBound = 0;
-		rightBound = 0;
-		area = 0;
-		centroidX = 0;
-		centroidY = 0;
-		mu00 = 0;
-		pixels.clear();
-
-		if(image != null){
-			int labelColor = colorGenerator.getRandomColor();
-			int imageWidth = image.getImageWidth();
-			int leftNeighbourIndex = 0;
-			int rightNeighbourIndex = 0;
-			int upperNeighbourIndex = 0;
-			int lowerNeighbourIndex = 0;
-
-			int pixelIndex = pixelStartIndex;
-
-			// enqueue first pixel of region
-			floodFillQueue.add(pixelIndex);
-
-			while (!floodFillQueue.isEmpty()) {
-
-				pixelIndex = floodFillQueue.poll();
-
-				leftNeighbourIndex = pixelIndex - 1;
-				rightNeighbourIndex = pixelIndex + 1;
-				upperNeighbourIndex = pixelIndex - imageWidth;
-				lowerNeighbourIndex = pixelIndex + imageWidth;
-
-				// left neighbour
-				if (leftNeighbourIndex > 0
-						&& destPixels[leftNeighbourIndex] == ImageComponent.FOREGROUND) {
-					destPixels[leftNeighbourIndex] = labelColor;					
-					floodFillQueue.add(leftNeighbourIndex);
-					
-					updateHorizonalBounds(leftNeighbourIndex);
-					
-					int xPos = leftNeighbourIndex % imageWidth;
-					int yPos = leftNeighbourIndex / imageWidth;
-					
-					pixels.add(new Pixel(xPos, yPos));
-				}
-				// right neighbor
-				if (rightNeighbourIndex < destPixels.length
-						&& destPixels[rightNeighbourIndex] == ImageComponent.FOREGROUND) {
-					destPixels[rightNeighbourIndex] = labelColor;
-					floodFillQueue.add(rightNeighbourIndex);
-					
-					updateHorizonalBounds(rightNeighbourIndex);
-					
-					int xPos = rightNeighbourIndex % imageWidth;
-					int yPos = rightNeighbourIndex / imageWidth;
-					
-					pixels.add(new Pixel(xPos, yPos));
-				}
-				// upper neighbor
-				if (upperNeighbourIndex > 0
-						&& destPixels[upperNeighbourIndex] == ImageComponent.FOREGROUND) {
-					destPixels[upperNeighbourIndex] = labelColor;
-					floodFillQueue.add(upperNeighbourIndex);
-					
-					updateVerticalBounds(upperNeighbourIndex);
-					
-					int xPos = upperNeighbourIndex % imageWidth;
-					int yPos = upperNeighbourIndex / imageWidth;
-					
-					pixels.add(new Pixel(xPos, yPos));
-				}
-				// lower neighbor
-				if (lowerNeighbourIndex < destPixels.length
-						&& destPixels[lowerNeighbourIndex] == ImageComponent.FOREGROUND) {
-					destPixels[lowerNeighbourIndex] = labelColor;
-					floodFillQueue.add(lowerNeighbourIndex);
-					
-					updateVerticalBounds(lowerNeighbourIndex);
-
-					int xPos = lowerNeighbourIndex % imageWidth;
-					int yPos = lowerNeighbourIndex / imageWidth;
-					
-					pixels.add(new Pixel(xPos, yPos));
-				}
-			}
-			
-			//subtract the offset from X and Y positions		
-			Iterator<Pixel> pixelIt = pixels.iterator();
-			while(pixelIt.hasNext()){
-				Pixel currentPixel = pixelIt.next();
-				currentPixel.x -= leftBound - 1;
-				currentPixel.y -= upperBound - 1;
-			}
-			
-			//calculate area of region, centroid position and mu00
-			area = getMoment(0, 0);
-			centroidX = (getMoment(1, 0) / area);
-			centroidY = (getMoment(0, 1) / area);
-			mu00 = getCentralMoment(0, 0);
-		}
-	}
+	/**
+	 * Appends a row with the bounding box, area and centroid to the table and
+	 * returns the row. Only the moments up to order 1 are used.
+	 */
+	public int addGeometry(final RegionTable table, final int id, final MomentAccumulator moments,
+			final int leftBound, final int upperBound, final int rightBound, final int lowerBound) {
+		setRegion(moments, leftBound, upperBound);
+		
+		int row = table.addRow(id);
+		
+		//Bounding Box
+		table.setBoundingBox(row, leftBound, upperBound, rightBound - leftBound, lowerBound - upperBound);
 	
-	private void updateVerticalBounds(int pixelIndex){
-		int imageWidth = image.getImageWidth();
-		//get y position of neighbor
-		int yPos = pixelIndex / imageWidth;
+		//area
+		table.setArea(row, (int)getArea());
 		
-		if(upperBound == 0 || yPos < upperBound){
-			upperBound = yPos;
-		}
+		//centroid
+		int centroidXPos = leftBound + (int)getCentroidX();
+		int centroidYPos = upperBound + (int)getCentroidY();
+		table.setCentroid(row, centroidXPos, centroidYPos);
 		
-		if(yPos > lowerBound){
-			lowerBound = yPos;
-		}
+		return row;
 	}
-	
-	private void updateHorizonalBounds(int pixelIndex){
-		int imageWidth = image.getImageWidth();
+
+	//writes orientation, eccentricity and hu moments of the last set moments to the row
+	public void setMomentFeatures(final RegionTable table, final int row) {
+		//orientation
+		table.setOrientationAngle(row, getOrientationAngle());
 		
-		//get x position of neighbor
-		int xPos = pixelIndex % imageWidth;
+		//eccentricity
+		table.setEccentricity(row, getEccentricity());
 		
-		if(leftBound == 0 || xPos < leftBound){
-			leftBound = xPos;
+		//hu moments
+		for (int num = 1; num <= RegionTable.HU_MOMENT_COUNT; ++num) {
+			table.setHuMoment(row, num, getHuMoment(num));
 		}
-	
-		if(xPos > rightBound){
-			rightBound = xPos;
+		table.setComputed(row, RegionTable.MOMENT_FEATURES);
+	}
+
+	/**
+	 * Raw moments of a stored region, summed run by run. Every run adds two
+	 * crack edges to the contours, so the contours are only used for regions
+	 * without runs. Both give the same exact values.
+	 */
+	MomentAccumulator computeMoments(final RegionContours contours, final RegionRuns runs, final int id) {
+		if (runs != null) {
+			return runs.computeMoments();
 		}
+		if (contours == null) throw new IllegalArgumentException("Region " + id + " has no pixels");
+		return ContourMoments.compute(contours);
 	}
-	
-	public double getMoment(int p, int q){
-		double moment = 0;
+
+	//sets the contours of the region and the perimeter and compactness derived from them
+	public void setContours(final Region region, final RegionContours contours) {
+		region.setContours(contours);
 		
-		Iterator<Pixel> pixelIt = pixels.iterator();
-		while(pixelIt.hasNext()){
-			Pixel currentPixel = pixelIt.next();			
-			moment += Math.pow(currentPixel.x, p) *  Math.pow(currentPixel.y, q);
+		//compactness 4*pi*area/perimeter^2 is about 0.9 for a large disc and pi/4 for a square, tiny regions can exceed 1
+		float perimeter = (float) contours.getPerimeter();
+		region.setPerimeter(perimeter);
+		if (perimeter > 0) {
+			region.setCompactness((float) (4 * Math.PI * region.getArea() / (perimeter * perimeter)));
 		}
-		return moment;
+	}
+
+	public void setRegion(final MomentAccumulator moments, final int leftBound, final int upperBound) {
+		this.moments = moments;
+		this.leftBound = leftBound;
+		this.upperBound = upperBound;
+
+		//calculate area of region, centroid position and mu00
+		area = moments.getMoment(0, 0);
+		centroidX = (moments.getMoment(1, 0) / area);
+		centroidY = (moments.getMoment(0, 1) / area);
+		mu00 = area;
+	}
+	
+	//raw moment relative to the first pixel of the region
+	public double getMoment(int p, int q){
+		return moments.getMoment(p, q);
 	}
 	
 	public double getCentralMoment(int p, int q){
-		double centralMoment = 0;
+		double m10 = moments.getMoment(1, 0);
+		double m01 = moments.getMoment(0, 1);
 		
-		Iterator<Pixel> pixelIt = pixels.iterator();
-		while(pixelIt.hasNext()){
-			Pixel currentPixel = pixelIt.next();			
-			centralMoment += Math.pow(currentPixel.x - centroidX, p) *  Math.pow(currentPixel.y - centroidY, q);
+		switch(p * 4 + q){
+		case 0:
+			return mu00;
+		case 4:
+		case 1:
+			return 0;
+		case 8:
+			return moments.getMoment(2, 0) - centroidX * m10;
+		case 5:
+			return moments.getMoment(1, 1) - centroidX * m01;
+		case 2:
+			return moments.getMoment(0, 2) - centroidY * m01;
+		case 12:
+			return moments.getMoment(3, 0) - 3 * centroidX * moments.getMoment(2, 0)
+					+ 2 * centroidX * centroidX * m10;
+		case 9:
+			return moments.getMoment(2, 1) - 2 * centroidX * moments.getMoment(1, 1)
+					- centroidY * moments.getMoment(2, 0) + 2 * centroidX * centroidX * m01;
+		case 6:
+			return moments.getMoment(1, 2) - 2 * centroidY * moments.getMoment(1, 1)
+					- centroidX * moments.getMoment(0, 2) + 2 * centroidY * centroidY * m10;
+		case 3:
+			return moments.getMoment(0, 3) - 3 * centroidY * moments.getMoment(0, 2)
+					+ 2 * centroidY * centroidY * m01;
+		default:
+			throw new IllegalArgumentException("Moment order too high: " + p + "," + q);
 		}
-		
-		return centralMoment;
 	}
 	
 	public double getNormalCentralMoment(int p, int q){
@@ -289,14 +219,6 @@ public class RegionAnalyzer {
 		return eccentricity;
 	}
 	
-	public int[] getPixels() {
-		return destPixels;
-	}
-
-	public int getRegionSize() {
-		return regionSize;
-	}
-
 	public int getUpperBound() {
 		return upperBound;
 	}
@@ -305,34 +227,16 @@ public class RegionAnalyzer {
 		return leftBound;
 	}
 
-	public int getLowerBound() {
-		return lowerBound;
-	}
-
-	public int getRightBound() {
-		return rightBound;
-	}
-	
 	public double getArea() {
 		return area;
 	}
 
+	//centroid relative to the upper left corner of the bounding box
 	public double getCentroidX() {
-		return centroidX;
+		return moments.getOriginX() - leftBound + centroidX;
 	}
 
 	public double getCentroidY() {
-		return centroidY;
-	}
-	
-	public int[] getRegionPixels(){
-		int regionPixels[] = new int[this.pixels.size()];
-		
-		Iterator<Pixel> pixelIt = this.pixels.iterator();
-		for(int i=0;pixelIt.hasNext();++i){
-			Pixel currentPixel = pixelIt.next();
-			regionPixels[i] = (currentPixel.y + upperBound-1) * this.image.getImageWidth() + currentPixel.x + leftBound-1;
-		}
-		return regionPixels;
+		return moments.getOriginY() - upperBound + centroidY;
 	}
 }
@@ -0,0 +1,514 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Groups regions into clusters of lookalike regions in one pass.
+ *
+ * Two regions are linked if all their features (orientation, eccentricity,
+ * hu1..hu5) differ by less than the tolerances, the clusters are the
+ * connected groups of linked regions. The regions are sorted into a grid
+ * with the tolerances as cell size on all features, so the regions of a
+ * cell are within the tolerances of each other and are united without
+ * comparing them. Linked regions of different cells lie in neighbouring
+ * cells. Two neighbouring cells are skipped if they are already in the
+ * same cluster or their bounds are too far apart, otherwise their regions
+ * are compared until the first linked pair.
+ */
+public class RegionClustering {
+
+	private static final int DIMS = SimilarityIndex.FEATURE_COUNT;
+	//keeps the cell coordinates and their neighbours in long range
+	private static final double MAX_CELL = 1L << 52;
+	//ranges of at most this many cells are scanned for neighbours instead of narrowed further
+	private static final int SCAN_LENGTH = 64;
+
+	private final int ids[];
+	//cluster per region in the order of ids
+	private final int clusters[];
+	private final int clusterSizes[];
+	private final int representatives[];
+	//regions of the clusters, cluster c is members[memberStarts[c]..memberStarts[c + 1])
+	private final int memberStarts[];
+	private final int members[];
+	//cluster of a region id, -1 for other regions
+	private final int clusterOfID[];
+
+	//union-find forest over the regions
+	private int parents[];
+
+	/**
+	 * Clusters the given regions, features holds their vectors with
+	 * DIMS values each in the order of SimilarityIndex.getFeatures().
+	 * Regions with undefined features stay alone.
+	 */
+	public RegionClustering(final int regionIDs[], final double features[], final double tolerances[]) {
+		int count = regionIDs.length;
+		ids = regionIDs.clone();
+		parents = new int[count];
+		for (int i = 0; i < count; ++i) {
+			parents[i] = i;
+		}
+
+		if (hasPositiveTolerances(tolerances)) {
+			link(features, tolerances);
+		}
+
+		//number the clusters in the order of their first region
+		clusters = new int[count];
+		int clusterOfRoot[] = new int[count];
+		Arrays.fill(clusterOfRoot, -1);
+		int clusterCount = 0;
+		for (int i = 0; i < count; ++i) {
+			int root = find(i);
+			if (clusterOfRoot[root] == -1) {
+				clusterOfRoot[root] = clusterCount++;
+			}
+			clusters[i] = clusterOfRoot[root];
+		}
+		parents = null;
+
+		clusterSizes = new int[clusterCount];
+		for (int i = 0; i < count; ++i) {
+			++clusterSizes[clusters[i]];
+		}
+		memberStarts = new int[clusterCount + 1];
+		for (int c = 0; c < clusterCount; ++c) {
+			memberStarts[c + 1] = memberStarts[c] + clusterSizes[c];
+		}
+		members = new int[count];
+		int fill[] = Arrays.copyOf(memberStarts, clusterCount);
+		for (int i = 0; i < count; ++i) {
+			members[fill[clusters[i]]++] = ids[i];
+		}
+
+		int maxID = -1;
+		for (int id : ids) {
+			maxID = Math.max(maxID, id);
+		}
+		clusterOfID = new int[maxID + 1];
+		Arrays.fill(clusterOfID, -1);
+		for (int i = 0; i < count; ++i) {
+			clusterOfID[ids[i]] = clusters[i];
+		}
+
+		representatives = findRepresentatives(features, tolerances, clusterCount);
+	}
+
+	private static boolean hasPositiveTolerances(final double tolerances[]) {
+		for (int dim = 0; dim < DIMS; ++dim) {
+			if (!(tolerances[dim] > 0)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//unites all pairs of linked regions
+	private void link(final double features[], final double tolerances[]) {
+		int count = ids.length;
+		boolean isDefined[] = new boolean[count];
+		int regions[] = new int[count];
+		int definedCount = 0;
+		for (int i = 0; i < count; ++i) {
+			isDefined[i] = !hasNaN(features, i * DIMS);
+			if (isDefined[i]) {
+				regions[definedCount++] = i;
+			}
+		}
+
+		//cell coordinates, the most selective feature first so the neighbour search ends early
+		int gridDims[] = orderGridDims(features, tolerances, isDefined);
+		long coords[] = new long[count * DIMS];
+		for (int i = 0; i < count; ++i) {
+			if (isDefined[i]) {
+				for (int g = 0; g < DIMS; ++g) {
+					coords[i * DIMS + g] = cell(features[i * DIMS + gridDims[g]], tolerances[gridDims[g]]);
+				}
+			}
+		}
+
+		//sorting by coordinates makes the regions of a cell and the cells of a coordinate prefix consecutive
+		int sorted[] = sortByCell(coords, Arrays.copyOf(regions, definedCount));
+		int cellStarts[] = new int[definedCount + 1];
+		long cellCoords[] = new long[definedCount * DIMS];
+		int cellCount = 0;
+		for (int i = 0; i < definedCount; ++i) {
+			if (i == 0 || !isSameCell(coords, sorted[i - 1], sorted[i])) {
+				System.arraycopy(coords, sorted[i] * DIMS, cellCoords, cellCount * DIMS, DIMS);
+				cellStarts[cellCount++] = i;
+			}
+		}
+		cellStarts[cellCount] = definedCount;
+
+		//feature bounds of the cells
+		double lows[] = new double[cellCount * DIMS];
+		double highs[] = new double[cellCount * DIMS];
+		Arrays.fill(lows, Double.POSITIVE_INFINITY);
+		Arrays.fill(highs, Double.NEGATIVE_INFINITY);
+		for (int cell = 0; cell < cellCount; ++cell) {
+			for (int m = cellStarts[cell]; m < cellStarts[cell + 1]; ++m) {
+				for (int dim = 0; dim < DIMS; ++dim) {
+					lows[cell * DIMS + dim] = Math.min(lows[cell * DIMS + dim], features[sorted[m] * DIMS + dim]);
+					highs[cell * DIMS + dim] = Math.max(highs[cell * DIMS + dim], features[sorted[m] * DIMS + dim]);
+				}
+			}
+		}
+
+		//the regions of a cell are within the tolerances, unless rounding or clamped cells put them farther apart
+		boolean isUnited[] = new boolean[cellCount];
+		for (int cell = 0; cell < cellCount; ++cell) {
+			int head = sorted[cellStarts[cell]];
+			isUnited[cell] = isWithinTolerances(lows, highs, cell, cell, tolerances);
+			for (int m = cellStarts[cell]; m < cellStarts[cell + 1]; ++m) {
+				if (isUnited[cell]) {
+					parents[sorted[m]] = head;
+					continue;
+				}
+				for (int n = m + 1; n < cellStarts[cell + 1]; ++n) {
+					linkIfSimilar(sorted[m], sorted[n], features, tolerances);
+				}
+			}
+		}
+
+		//depth first over the neighbour offsets in -1..1 whose first non zero entry is 1, each level
+		//narrows the range of cells to those with the neighbour coordinates so far, and short ranges
+		//are scanned instead; the neighbours come after the cell in the sorted order
+		int offsets[] = new int[DIMS];
+		int rangeStarts[] = new int[DIMS];
+		int rangeEnds[] = new int[DIMS];
+		for (int cell = 0; cell < cellCount; ++cell) {
+			int depth = 0;
+			rangeStarts[0] = cell;
+			rangeEnds[0] = cellCount;
+			offsets[0] = -2;
+			while (depth >= 0) {
+				if (++offsets[depth] > 1) {
+					--depth;
+					continue;
+				}
+				boolean isZeroPrefix = isZero(offsets, depth);
+				if (isZeroPrefix && offsets[depth] < 0) {
+					continue;
+				}
+				long coord = cellCoords[cell * DIMS + depth] + offsets[depth];
+				int start = findCoord(cellCoords, depth, rangeStarts[depth], rangeEnds[depth], coord);
+				int end = findCoord(cellCoords, depth, start, rangeEnds[depth], coord + 1);
+				if (start == end) {
+					continue;
+				}
+				if (depth + 1 < DIMS && end - start <= SCAN_LENGTH) {
+					for (int other = Math.max(start, cell + 1); other < end; ++other) {
+						if (isNeighbour(cellCoords, cell, other, depth + 1)) {
+							linkCells(cell, other, sorted, cellStarts, isUnited, lows, highs, features, tolerances);
+						}
+					}
+				} else if (depth + 1 < DIMS) {
+					++depth;
+					rangeStarts[depth] = start;
+					rangeEnds[depth] = end;
+					offsets[depth] = -2;
+				} else if (!isZeroPrefix || offsets[depth] != 0) {
+					linkCells(cell, start, sorted, cellStarts, isUnited, lows, highs, features, tolerances);
+				}
+			}
+		}
+	}
+
+	private static boolean isSameCell(final long coords[], final int a, final int b) {
+		for (int g = 0; g < DIMS; ++g) {
+			if (coords[a * DIMS + g] != coords[b * DIMS + g]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//true if the coordinates from the given one on differ by at most one
+	private static boolean isNeighbour(final long cellCoords[], final int cell, final int other, final int from) {
+		for (int g = from; g < DIMS; ++g) {
+			long difference = cellCoords[other * DIMS + g] - cellCoords[cell * DIMS + g];
+			if (difference < -1 || difference > 1) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//the regions in the order of their cell coordinates, a stable counting sort on the ranks of the
+	//coordinates per grid feature from the last one
+	private static int[] sortByCell(final long coords[], final int regions[]) {
+		int n = regions.length;
+		int sorted[] = regions;
+		int buffer[] = new int[n];
+		long values[] = new long[n];
+		long distinct[] = new long[n];
+		int ranks[] = new int[n];
+		for (int g = DIMS - 1; g >= 0; --g) {
+			for (int i = 0; i < n; ++i) {
+				values[i] = coords[sorted[i] * DIMS + g];
+			}
+			System.arraycopy(values, 0, distinct, 0, n);
+			Arrays.sort(distinct);
+			int distinctCount = 0;
+			for (int i = 0; i < n; ++i) {
+				if (i == 0 || distinct[i] != distinct[i - 1]) {
+					distinct[distinctCount++] = distinct[i];
+				}
+			}
+
+			int starts[] = new int[distinctCount + 1];
+			for (int i = 0; i < n; ++i) {
+				ranks[i] = Arrays.binarySearch(distinct, 0, distinctCount, values[i]);
+				++starts[ranks[i] + 1];
+			}
+			for (int r = 0; r < distinctCount; ++r) {
+				starts[r + 1] += starts[r];
+			}
+			for (int i = 0; i < n; ++i) {
+				buffer[starts[ranks[i]]++] = sorted[i];
+			}
+			int swap[] = sorted;
+			sorted = buffer;
+			buffer = swap;
+		}
+		return sorted;
+	}
+
+	//first cell in start..end whose coordinate at depth is not below coord, the cells are sorted there
+	private static int findCoord(final long cellCoords[], final int depth, int start, int end, final long coord) {
+		while (start < end) {
+			int middle = (start + end) >>> 1;
+			if (cellCoords[middle * DIMS + depth] < coord) {
+				start = middle + 1;
+			} else {
+				end = middle;
+			}
+		}
+		return start;
+	}
+
+	//compares the regions of two cells, united cells are done after their first linked pair
+	private void linkCells(final int cell, final int otherCell, final int sorted[], final int cellStarts[],
+			final boolean isUnited[], final double lows[], final double highs[], final double features[],
+			final double tolerances[]) {
+		int head = sorted[cellStarts[cell]];
+		int otherHead = sorted[cellStarts[otherCell]];
+		boolean areUnited = isUnited[cell] && isUnited[otherCell];
+		if (areUnited && find(head) == find(otherHead)) {
+			return;
+		}
+		for (int dim = 0; dim < DIMS; ++dim) {
+			if (!(lows[otherCell * DIMS + dim] < highs[cell * DIMS + dim] + tolerances[dim]
+					&& highs[otherCell * DIMS + dim] > lows[cell * DIMS + dim] - tolerances[dim])) {
+				return;
+			}
+		}
+		if (areUnited && isWithinTolerances(lows, highs, cell, otherCell, tolerances)) {
+			union(find(head), find(otherHead));
+			return;
+		}
+		for (int m = cellStarts[cell]; m < cellStarts[cell + 1]; ++m) {
+			for (int n = cellStarts[otherCell]; n < cellStarts[otherCell + 1]; ++n) {
+				if (linkIfSimilar(sorted[m], sorted[n], features, tolerances) && areUnited) {
+					return;
+				}
+			}
+		}
+	}
+
+	private static boolean isZero(final int offsets[], final int length) {
+		for (int g = 0; g < length; ++g) {
+			if (offsets[g] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//true if every region of the first cell is linked with every region of the other
+	private static boolean isWithinTolerances(final double lows[], final double highs[], final int cell,
+			final int otherCell, final double tolerances[]) {
+		for (int dim = 0; dim < DIMS; ++dim) {
+			if (!(highs[otherCell * DIMS + dim] < lows[cell * DIMS + dim] + tolerances[dim]
+					&& lows[otherCell * DIMS + dim] > highs[cell * DIMS + dim] - tolerances[dim])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//all features, those with the most occupied cells separate the regions best
+	private static int[] orderGridDims(final double features[], final double tolerances[], final boolean isDefined[]) {
+		int count = isDefined.length;
+		int cellCounts[] = new int[DIMS];
+		long cells[] = new long[count];
+		for (int dim = 0; dim < DIMS; ++dim) {
+			int n = 0;
+			for (int i = 0; i < count; ++i) {
+				if (isDefined[i]) {
+					cells[n++] = cell(features[i * DIMS + dim], tolerances[dim]);
+				}
+			}
+			Arrays.sort(cells, 0, n);
+			int distinct = n > 0 ? 1 : 0;
+			for (int i = 1; i < n; ++i) {
+				if (cells[i] != cells[i - 1]) {
+					++distinct;
+				}
+			}
+			cellCounts[dim] = distinct;
+		}
+
+		int gridDims[] = new int[DIMS];
+		boolean isUsed[] = new boolean[DIMS];
+		for (int g = 0; g < DIMS; ++g) {
+			int best = -1;
+			for (int dim = 0; dim < DIMS; ++dim) {
+				if (!isUsed[dim] && (best == -1 || cellCounts[dim] > cellCounts[best])) {
+					best = dim;
+				}
+			}
+			isUsed[best] = true;
+			gridDims[g] = best;
+		}
+		return gridDims;
+	}
+
+	//values closer than the tolerance are at most one cell apart
+	private static long cell(final double value, final double tolerance) {
+		double cell = Math.floor(value / tolerance);
+		return (long) Math.max(-MAX_CELL, Math.min(MAX_CELL, cell));
+	}
+
+	//true if the regions are in the same cluster afterwards
+	private boolean linkIfSimilar(final int a, final int b, final double features[], final double tolerances[]) {
+		int rootA = find(a);
+		int rootB = find(b);
+		if (rootA == rootB) {
+			return true;
+		}
+		for (int dim = 0; dim < DIMS; ++dim) {
+			double value = features[a * DIMS + dim];
+			double other = features[b * DIMS + dim];
+			if (!(other > value - tolerances[dim] && other < value + tolerances[dim])) {
+				return false;
+			}
+		}
+		union(rootA, rootB);
+		return true;
+	}
+
+	//the root of the smaller index stays, so the forest does not depend on the visiting order
+	private void union(final int rootA, final int rootB) {
+		if (rootA < rootB) {
+			parents[rootB] = rootA;
+		} else if (rootB < rootA) {
+			parents[rootA] = rootB;
+		}
+	}
+
+	private int find(int i) {
+		while (parents[i] != i) {
+			parents[i] = parents[parents[i]];
+			i = parents[i];
+		}
+		return i;
+	}
+
+	private static boolean hasNaN(final double vector[], final int offset) {
+		for (int dim = 0; dim < DIMS; ++dim) {
+			if (Double.isNaN(vector[offset + dim])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//the region closest to the mean of its cluster, measured in tolerances
+	private int[] findRepresentatives(final double features[], final double tolerances[], final int clusterCount) {
+		int count = ids.length;
+		double means[] = new double[clusterCount * DIMS];
+		for (int i = 0; i < count; ++i) {
+			int c = clusters[i];
+			for (int dim = 0; dim < DIMS; ++dim) {
+				means[c * DIMS + dim] += features[i * DIMS + dim] / clusterSizes[c];
+			}
+		}
+
+		int result[] = new int[clusterCount];
+		double bestDistances[] = new double[clusterCount];
+		Arrays.fill(result, -1);
+		for (int i = 0; i < count; ++i) {
+			int c = clusters[i];
+			double distance = 0;
+			for (int dim = 0; dim < DIMS; ++dim) {
+				if (tolerances[dim] > 0 && !Double.isInfinite(tolerances[dim])) {
+					double d = (features[i * DIMS + dim] - means[c * DIMS + dim]) / tolerances[dim];
+					distance += d * d;
+				}
+			}
+			if (result[c] == -1 || distance < bestDistances[c]) {
+				result[c] = ids[i];
+				bestDistances[c] = distance;
+			}
+		}
+		return result;
+	}
+
+	public int getClusterCount() {
+		return clusterSizes.length;
+	}
+
+	//cluster of the region, -1 if the region was not clustered
+	public int getCluster(final int regionID) {
+		return regionID >= 0 && regionID < clusterOfID.length ? clusterOfID[regionID] : -1;
+	}
+
+	//cluster per region in the order of getRegionIDs()
+	public int[] getClusters() {
+		return clusters.clone();
+	}
+
+	public int[] getRegionIDs() {
+		return ids.clone();
+	}
+
+	public int getClusterSize(final int cluster) {
+		return clusterSizes[cluster];
+	}
+
+	//region closest to the mean features of the cluster
+	public int getRepresentative(final int cluster) {
+		return representatives[cluster];
+	}
+
+	//region ids of the cluster in the order of getRegionIDs()
+	public int[] getMembers(final int cluster) {
+		return Arrays.copyOfRange(members, memberStarts[cluster], memberStarts[cluster + 1]);
+	}
+}
@@ -0,0 +1,115 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+/**
+ * Boundaries of a region as crack chain codes. A contour runs along the
+ * pixel edges from corner to corner, so its vertices are integer corner
+ * coordinates. Each step is one of EAST, SOUTH, WEST or NORTH, packed with
+ * two bits.
+ *
+ * The region lies on the right of the direction of travel, so outer
+ * contours run clockwise and inner contours counterclockwise on screen.
+ * Contour 0 is the outer contour, all others are holes.
+ */
+public class RegionContours {
+
+	public static final int EAST = 0;
+	public static final int SOUTH = 1;
+	public static final int WEST = 2;
+	public static final int NORTH = 3;
+
+	//steps of a direction on the x and y axis
+	public static final int STEP_X[] = { 1, 0, -1, 0 };
+	public static final int STEP_Y[] = { 0, 1, 0, -1 };
+
+	static final int RECORD_SIZE = 4;
+	private static final double HALF_DIAGONAL = Math.sqrt(2) / 2;
+
+	//codes of all contours of the image, 32 per long
+	private final long codes[];
+	//startX, startY, length and code offset per contour
+	private final int records[];
+	private final int firstRecord;
+	private final int contourCount;
+
+	RegionContours(final long codes[], final int records[], final int firstRecord, final int contourCount) {
+		this.codes = codes;
+		this.records = records;
+		this.firstRecord = firstRecord;
+		this.contourCount = contourCount;
+	}
+
+	public int getContourCount() {
+		return contourCount;
+	}
+
+	public boolean isOuter(final int contour) {
+		return contour == 0;
+	}
+
+	public int getStartX(final int contour) {
+		return records[(firstRecord + contour) * RECORD_SIZE];
+	}
+
+	public int getStartY(final int contour) {
+		return records[(firstRecord + contour) * RECORD_SIZE + 1];
+	}
+
+	//number of steps, equal to the number of pixel edges of the contour
+	public int getLength(final int contour) {
+		return records[(firstRecord + contour) * RECORD_SIZE + 2];
+	}
+
+	public int getCode(final int contour, final int step) {
+		long code = (long) records[(firstRecord + contour) * RECORD_SIZE + 3] + step;
+		return (int) (codes[(int) (code >>> 5)] >>> ((code & 31) << 1)) & 3;
+	}
+
+	/**
+	 * Total length of all contours along the polygon through the midpoints
+	 * of their pixel edges. A straight step adds 1 and a turn adds sqrt(2)/2,
+	 * so this equals the length of the 8-connected boundary chain with sqrt(2)
+	 * per diagonal step. Like that, it overestimates the Euclidean perimeter of
+	 * a digital disc by about 5%.
+	 */
+	public double getPerimeter() {
+		double perimeter = 0;
+		for (int contour = 0; contour < contourCount; ++contour) {
+			int length = getLength(contour);
+			int turns = 0;
+			int previous = getCode(contour, length - 1);
+			for (int step = 0; step < length; ++step) {
+				int code = getCode(contour, step);
+				if (code != previous) {
+					++turns;
+				}
+				previous = code;
+			}
+			perimeter += (length - turns) + turns * HALF_DIAGONAL;
+		}
+		return perimeter;
+	}
+}
@@ -0,0 +1,158 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the bounding boxes of regions for rectangle queries.
+ *
+ * Every cell lists the regions whose bounding box overlaps it. All cell
+ * lists are packed into one int array.
+ */
+public class RegionGrid {
+
+	public static final int DEFAULT_CELL_SIZE = 64;
+
+	private final int cellSize;
+	private final int columns;
+	private final int rows;
+
+	//region ids of cell i are cellRegions[cellOffsets[i]..cellOffsets[i+1]-1]
+	private final int cellOffsets[];
+	private final int cellRegions[];
+
+	//bounding boxes of the indexed regions, indexed by region id
+	private final int boxes[];
+
+	public RegionGrid(final int imageWidth, final int imageHeight, final RegionTable regions) {
+		this(imageWidth, imageHeight, regions, DEFAULT_CELL_SIZE);
+	}
+
+	public RegionGrid(final int imageWidth, final int imageHeight, final RegionTable regions, final int cellSize) {
+		this.cellSize = cellSize;
+		columns = Math.max(1, (imageWidth + cellSize - 1) / cellSize);
+		rows = Math.max(1, (imageHeight + cellSize - 1) / cellSize);
+		cellOffsets = new int[columns * rows + 1];
+
+		int ids[] = regions.getIDs();
+		int boxX[] = regions.getBoxX();
+		int boxY[] = regions.getBoxY();
+		int boxWidth[] = regions.getBoxWidth();
+		int boxHeight[] = regions.getBoxHeight();
+		int count = regions.size();
+
+		int maxID = -1;
+		for (int row = 0; row < count; ++row) {
+			maxID = Math.max(maxID, ids[row]);
+		}
+		boxes = new int[(maxID + 1) * 4];
+		Arrays.fill(boxes, -1);
+
+		//count the regions per cell
+		for (int region = 0; region < count; ++region) {
+			if (!regions.hasBoundingBox(region)) {
+				continue;
+			}
+			int box = ids[region] * 4;
+			boxes[box] = boxX[region];
+			boxes[box + 1] = boxY[region];
+			boxes[box + 2] = boxX[region] + boxWidth[region];
+			boxes[box + 3] = boxY[region] + boxHeight[region];
+
+			for (int row = toRow(boxes[box + 1]); row <= toRow(boxes[box + 3]); ++row) {
+				for (int column = toColumn(boxes[box]); column <= toColumn(boxes[box + 2]); ++column) {
+					++cellOffsets[row * columns + column + 1];
+				}
+			}
+		}
+		for (int cell = 0; cell < columns * rows; ++cell) {
+			cellOffsets[cell + 1] += cellOffsets[cell];
+		}
+
+		//fill the cell lists
+		cellRegions = new int[cellOffsets[columns * rows]];
+		int fillPositions[] = Arrays.copyOf(cellOffsets, columns * rows);
+		for (int id = 0; id <= maxID; ++id) {
+			int box = id * 4;
+			if (boxes[box] == -1) {
+				continue;
+			}
+			for (int row = toRow(boxes[box + 1]); row <= toRow(boxes[box + 3]); ++row) {
+				for (int column = toColumn(boxes[box]); column <= toColumn(boxes[box + 2]); ++column) {
+					cellRegions[fillPositions[row * columns + column]++] = id;
+				}
+			}
+		}
+	}
+
+	private int toColumn(final int xPos) {
+		return Math.max(0, Math.min(columns - 1, xPos / cellSize));
+	}
+
+	private int toRow(final int yPos) {
+		return Math.max(0, Math.min(rows - 1, yPos / cellSize));
+	}
+
+	/**
+	 * Ids of all regions whose bounding box intersects the pixels
+	 * xPos..xPos+width-1, yPos..yPos+height-1, in ascending order of the cells.
+	 */
+	public int[] query(final int xPos, final int yPos, final int width, final int height) {
+		int result[] = new int[16];
+		int count = 0;
+		if (width <= 0 || height <= 0) {
+			return new int[0];
+		}
+		int right = xPos + width - 1;
+		int bottom = yPos + height - 1;
+
+		for (int row = toRow(yPos); row <= toRow(bottom); ++row) {
+			for (int column = toColumn(xPos); column <= toColumn(right); ++column) {
+				int cell = row * columns + column;
+				for (int i = cellOffsets[cell]; i < cellOffsets[cell + 1]; ++i) {
+					int id = cellRegions[i];
+					int box = id * 4;
+					if (boxes[box] > right || boxes[box + 2] < xPos || boxes[box + 1] > bottom || boxes[box + 3] < yPos) {
+						continue;
+					}
+					//report each region only in the cell holding the upper left corner of the overlap
+					if (toColumn(Math.max(boxes[box], xPos)) != column || toRow(Math.max(boxes[box + 1], yPos)) != row) {
+						continue;
+					}
+					if (count == result.length) {
+						result = Arrays.copyOf(result, count * 2);
+					}
+					result[count++] = id;
+				}
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	public int getCellSize() {
+		return cellSize;
+	}
+}
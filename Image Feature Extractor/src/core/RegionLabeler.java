@@ -0,0 +1,627 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Two-pass connected component labeler for 4-connected foreground regions.
+ *
+ * The image is split into horizontal strips. The first pass labels every
+ * strip on its own: it assigns provisional labels in raster order, records
+ * label equivalences in a union-find table and accumulates the raw moments
+ * and bounds of every provisional label, unless the moment order is
+ * NO_MOMENTS because only the runs are needed. Labels touching across strip
+ * seams are then merged and every provisional label is mapped to a dense
+ * region label (1..regionCount, 0 is background). The second pass writes the
+ * dense labels and collects the horizontal runs of each region in raster
+ * order.
+ *
+ * With a parallelism greater than one the strips are processed on a
+ * ForkJoinPool. The result is identical to the sequential labeling.
+ */
+public class RegionLabeler {
+
+	public static final int BACKGROUND_LABEL = 0;
+	public static final int DEFAULT_STRIP_HEIGHT = 256;
+	//moment order that collects only labels and runs, without moments and bounds
+	public static final int NO_MOMENTS = -1;
+
+	private int imageWidth;
+	private int imageHeight;
+	private int regionCount;
+
+	private int parallelism;
+	private int stripHeight;
+	//order of the accumulated moments, 1 for area and centroid only, NO_MOMENTS for none
+	private int momentOrder;
+	private ForkJoinPool pool;
+
+	//label map, one label per pixel
+	private int labels[];
+	private Strip strips[];
+
+	//union-find table of all provisional labels, holds the dense labels after resolving
+	private int parent[];
+	//run list position of the provisional labels
+	private int fillPositions[];
+	private int fillRepresentatives[];
+
+	//per region data, indexed by dense label
+	private MomentAccumulator regionMoments[];
+	private int regionOffsets[];
+	private int leftBounds[];
+	private int rightBounds[];
+	private int upperBounds[];
+	private int lowerBounds[];
+	//runs (row, xStart, xEnd) of all regions, grouped by label
+	private int regionRuns[];
+
+	public RegionLabeler() {
+		this(1, DEFAULT_STRIP_HEIGHT);
+	}
+
+	public RegionLabeler(final int parallelism, final int stripHeight) {
+		labels = new int[0];
+		regionRuns = new int[0];
+		regionCount = 0;
+		momentOrder = MomentAccumulator.MAX_ORDER;
+		setParallelism(parallelism);
+		setStripHeight(stripHeight);
+	}
+
+	//labels packed ARGB pixels, only pixels equal to Extractor.FOREGROUND belong to regions
+	public int label(final int pixels[], final int width, final int height) {
+		return label(PixelSource.of(pixels, width, height));
+	}
+
+	public int label(final PixelSource source) {
+		int width = source.getWidth();
+		int height = source.getHeight();
+		imageWidth = width;
+		imageHeight = height;
+
+		//the label map holds one int per pixel
+		int pixelCount;
+		try {
+			pixelCount = Math.multiplyExact(width, height);
+		} catch (ArithmeticException e) {
+			throw new IllegalArgumentException("Image of " + width + "x" + height
+					+ " pixels is too large for a label map, use the streaming labeler (BatchExtractor -stream)");
+		}
+		if (labels.length < pixelCount) {
+			labels = new int[pixelCount];
+		}
+
+		createStrips();
+
+		forEachStrip(new StripAction() {
+			void run(int stripIndex) {
+				strips[stripIndex].firstPass(source);
+			}
+		});
+
+		int provisionalCount = 1;
+		for (Strip strip : strips) {
+			strip.labelBase = provisionalCount - 1;
+			provisionalCount += strip.labelCount;
+		}
+		mergeStrips(provisionalCount);
+		regionCount = resolve(provisionalCount);
+
+		forEachStrip(new StripAction() {
+			void run(int stripIndex) {
+				strips[stripIndex].secondPass();
+			}
+		});
+		strips = null;
+
+		return regionCount;
+	}
+
+	private void createStrips() {
+		int stripCount = 1;
+		if (parallelism > 1 && imageHeight > stripHeight) {
+			stripCount = (imageHeight + stripHeight - 1) / stripHeight;
+		}
+
+		strips = new Strip[stripCount];
+		for (int i = 0; i < stripCount; ++i) {
+			int firstRow = i * imageHeight / stripCount;
+			int endRow = (i + 1) * imageHeight / stripCount;
+			strips[i] = new Strip(firstRow, endRow);
+		}
+	}
+
+	//builds the global union-find table and merges labels across strip seams
+	private void mergeStrips(final int provisionalCount) {
+		parent = new int[provisionalCount];
+		for (Strip strip : strips) {
+			for (int label = 1; label <= strip.labelCount; ++label) {
+				parent[strip.labelBase + label] = strip.labelBase + strip.find(label);
+			}
+		}
+
+		if (strips.length > 1) {
+			final AtomicIntegerArray sharedParent = new AtomicIntegerArray(parent);
+			forEachStrip(new StripAction() {
+				void run(int stripIndex) {
+					if (stripIndex > 0) {
+						mergeSeam(sharedParent, strips[stripIndex - 1], strips[stripIndex]);
+					}
+				}
+			});
+			for (int label = 0; label < provisionalCount; ++label) {
+				parent[label] = sharedParent.get(label);
+			}
+		}
+	}
+
+	private void mergeSeam(final AtomicIntegerArray sharedParent, final Strip upper, final Strip lower) {
+		int upperRow = (lower.firstRow - 1) * imageWidth;
+		int lowerRow = lower.firstRow * imageWidth;
+		int lastUpper = BACKGROUND_LABEL;
+		int lastLower = BACKGROUND_LABEL;
+
+		for (int xPos = 0; xPos < imageWidth; ++xPos) {
+			int upperLabel = labels[upperRow + xPos];
+			int lowerLabel = labels[lowerRow + xPos];
+			if (upperLabel == BACKGROUND_LABEL || lowerLabel == BACKGROUND_LABEL) {
+				continue;
+			}
+			//runs of the same label pair only need one union
+			if (upperLabel != lastUpper || lowerLabel != lastLower) {
+				union(sharedParent, upper.labelBase + upperLabel, lower.labelBase + lowerLabel);
+				lastUpper = upperLabel;
+				lastLower = lowerLabel;
+			}
+		}
+	}
+
+	private static int find(final AtomicIntegerArray sharedParent, int label) {
+		while (true) {
+			int next = sharedParent.get(label);
+			if (next == label) {
+				return label;
+			}
+			//path halving, the grandparent is always a valid ancestor
+			int grandParent = sharedParent.get(next);
+			if (grandParent != next) {
+				sharedParent.compareAndSet(label, next, grandParent);
+			}
+			label = next;
+		}
+	}
+
+	private static void union(final AtomicIntegerArray sharedParent, int labelA, int labelB) {
+		while (true) {
+			int rootA = find(sharedParent, labelA);
+			int rootB = find(sharedParent, labelB);
+			if (rootA == rootB) {
+				return;
+			}
+			//the smaller label always becomes the root
+			int smallRoot = Math.min(rootA, rootB);
+			int largeRoot = Math.max(rootA, rootB);
+			if (sharedParent.compareAndSet(largeRoot, largeRoot, smallRoot)) {
+				return;
+			}
+			labelA = rootA;
+			labelB = rootB;
+		}
+	}
+
+	//maps every provisional label to a dense region label, merges moments and bounds
+	//and reserves the run list positions, returns the number of regions
+	private int resolve(final int provisionalCount) {
+		int count = 0;
+		boolean isAccumulating = momentOrder != NO_MOMENTS;
+		regionMoments = isAccumulating ? new MomentAccumulator[provisionalCount] : null;
+		leftBounds = isAccumulating ? new int[provisionalCount] : null;
+		rightBounds = isAccumulating ? new int[provisionalCount] : null;
+		upperBounds = isAccumulating ? new int[provisionalCount] : null;
+		lowerBounds = isAccumulating ? new int[provisionalCount] : null;
+
+		fillPositions = new int[provisionalCount];
+		fillRepresentatives = new int[provisionalCount];
+		int regionRunCounts[] = new int[provisionalCount];
+		int lastStrip[] = new int[provisionalCount];
+		int firstLabelInStrip[] = new int[provisionalCount];
+		Arrays.fill(lastStrip, -1);
+
+		for (int stripIndex = 0; stripIndex < strips.length; ++stripIndex) {
+			Strip strip = strips[stripIndex];
+			for (int localLabel = 1; localLabel <= strip.labelCount; ++localLabel) {
+				int label = strip.labelBase + localLabel;
+				int region;
+
+				if (parent[label] == label) {
+					region = ++count;
+					if (isAccumulating) {
+						regionMoments[region] = strip.moments[localLabel];
+						leftBounds[region] = strip.leftBounds[localLabel];
+						rightBounds[region] = strip.rightBounds[localLabel];
+						upperBounds[region] = strip.upperBounds[localLabel];
+						lowerBounds[region] = strip.lowerBounds[localLabel];
+					}
+				} else {
+					//parents are always smaller labels, so they are already resolved
+					region = parent[parent[label]];
+					if (isAccumulating) {
+						regionMoments[region].merge(strip.moments[localLabel]);
+						leftBounds[region] = Math.min(leftBounds[region], strip.leftBounds[localLabel]);
+						rightBounds[region] = Math.max(rightBounds[region], strip.rightBounds[localLabel]);
+						upperBounds[region] = Math.min(upperBounds[region], strip.upperBounds[localLabel]);
+						lowerBounds[region] = Math.max(lowerBounds[region], strip.lowerBounds[localLabel]);
+					}
+				}
+				parent[label] = region;
+
+				//all labels of a region within one strip share one position in the run list
+				if (lastStrip[region] != stripIndex) {
+					lastStrip[region] = stripIndex;
+					firstLabelInStrip[region] = label;
+					fillPositions[label] = regionRunCounts[region];
+				}
+				fillRepresentatives[label] = firstLabelInStrip[region];
+				regionRunCounts[region] += strip.runCounts[localLabel];
+			}
+			strip.moments = null;
+		}
+
+		regionOffsets = new int[count + 2];
+		for (int region = 1; region <= count; ++region) {
+			regionOffsets[region + 1] = regionOffsets[region] + regionRunCounts[region];
+		}
+		if (regionRuns.length < regionOffsets[count + 1] * 3) {
+			regionRuns = new int[regionOffsets[count + 1] * 3];
+		}
+		return count;
+	}
+
+	private void forEachStrip(final StripAction action) {
+		if (strips.length == 1) {
+			action.run(0);
+		} else {
+			if (pool == null || pool.getParallelism() != parallelism) {
+				if (pool != null) {
+					pool.shutdown();
+				}
+				pool = new ForkJoinPool(parallelism);
+			}
+			pool.invoke(new StripTask(action, 0, strips.length));
+		}
+	}
+
+	private static abstract class StripAction {
+		abstract void run(int stripIndex);
+	}
+
+	private static class StripTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final StripAction action;
+		private final int firstStrip;
+		private final int endStrip;
+
+		StripTask(final StripAction action, final int firstStrip, final int endStrip) {
+			this.action = action;
+			this.firstStrip = firstStrip;
+			this.endStrip = endStrip;
+		}
+
+		protected void compute() {
+			if (endStrip - firstStrip == 1) {
+				action.run(firstStrip);
+			} else {
+				int middle = (firstStrip + endStrip) / 2;
+				invokeAll(new StripTask(action, firstStrip, middle), new StripTask(action, middle, endStrip));
+			}
+		}
+	}
+
+	/**
+	 * Rows of the image that are labeled independently. Provisional labels
+	 * are local to the strip, starting at one.
+	 */
+	private class Strip {
+		final int firstRow;
+		final int endRow;
+
+		int labelCount;
+		int labelBase;
+
+		//union-find table and per label data of the provisional labels
+		int parent[];
+		int runCounts[];
+		//moments and bounds are null with NO_MOMENTS
+		final boolean isAccumulating;
+		MomentAccumulator moments[];
+		int leftBounds[];
+		int rightBounds[];
+		int upperBounds[];
+		int lowerBounds[];
+
+		Strip(final int firstRow, final int endRow) {
+			this.firstRow = firstRow;
+			this.endRow = endRow;
+			labelCount = 0;
+			parent = new int[16];
+			runCounts = new int[16];
+			isAccumulating = momentOrder != NO_MOMENTS;
+			if (isAccumulating) {
+				moments = new MomentAccumulator[16];
+				leftBounds = new int[16];
+				rightBounds = new int[16];
+				upperBounds = new int[16];
+				lowerBounds = new int[16];
+			}
+		}
+
+		//labels the strip run by run, blank words of a row are skipped at once
+		void firstPass(final PixelSource source) {
+			long row[] = new long[BinaryImage.getWordCount(imageWidth)];
+			int capacity = (imageWidth + 1) / 2 + 1;
+			int runStarts[] = new int[capacity];
+			int runEnds[] = new int[capacity];
+			int runLabels[] = new int[capacity];
+			int upperStarts[] = new int[capacity];
+			int upperEnds[] = new int[capacity];
+			int upperLabels[] = new int[capacity];
+			int upperCount = 0;
+
+			for (int yPos = firstRow; yPos < endRow; ++yPos) {
+				int rowStart = yPos * imageWidth;
+				source.getForegroundBits(yPos, row);
+
+				int runCount = 0;
+				int upperRun = 0;
+				int backgroundStart = 0;
+				int xPos = BinaryImage.nextSetBit(row, 0, imageWidth, 0);
+				while (xPos < imageWidth) {
+					int runEnd = BinaryImage.nextClearBit(row, 0, imageWidth, xPos) - 1;
+
+					//upper runs that end before this run cannot touch the following runs either
+					while (upperRun < upperCount && upperEnds[upperRun] < xPos) {
+						++upperRun;
+					}
+					int label = BACKGROUND_LABEL;
+					for (int run = upperRun; run < upperCount && upperStarts[run] <= runEnd; ++run) {
+						if (label == BACKGROUND_LABEL) {
+							label = upperLabels[run];
+						} else if (upperLabels[run] != label) {
+							union(label, upperLabels[run]);
+						}
+					}
+					if (label == BACKGROUND_LABEL) {
+						label = newLabel(xPos, yPos);
+					}
+
+					Arrays.fill(labels, rowStart + backgroundStart, rowStart + xPos, BACKGROUND_LABEL);
+					Arrays.fill(labels, rowStart + xPos, rowStart + runEnd + 1, label);
+					++runCounts[label];
+					if (isAccumulating) {
+						moments[label].addRun(xPos, runEnd, yPos);
+						if (xPos < leftBounds[label]) {
+							leftBounds[label] = xPos;
+						}
+						if (runEnd > rightBounds[label]) {
+							rightBounds[label] = runEnd;
+						}
+						lowerBounds[label] = yPos;
+					}
+
+					runStarts[runCount] = xPos;
+					runEnds[runCount] = runEnd;
+					runLabels[runCount] = label;
+					++runCount;
+
+					backgroundStart = runEnd + 1;
+					xPos = BinaryImage.nextSetBit(row, 0, imageWidth, backgroundStart);
+				}
+				Arrays.fill(labels, rowStart + backgroundStart, rowStart + imageWidth, BACKGROUND_LABEL);
+
+				//the runs of this row are the upper runs of the next one
+				int swap[] = upperStarts;
+				upperStarts = runStarts;
+				runStarts = swap;
+				swap = upperEnds;
+				upperEnds = runEnds;
+				runEnds = swap;
+				swap = upperLabels;
+				upperLabels = runLabels;
+				runLabels = swap;
+				upperCount = runCount;
+			}
+		}
+
+		private int newLabel(final int xPos, final int yPos) {
+			int label = ++labelCount;
+			if (label == parent.length) {
+				int newLength = parent.length * 2;
+				parent = Arrays.copyOf(parent, newLength);
+				runCounts = Arrays.copyOf(runCounts, newLength);
+				if (isAccumulating) {
+					moments = Arrays.copyOf(moments, newLength);
+					leftBounds = Arrays.copyOf(leftBounds, newLength);
+					rightBounds = Arrays.copyOf(rightBounds, newLength);
+					upperBounds = Arrays.copyOf(upperBounds, newLength);
+					lowerBounds = Arrays.copyOf(lowerBounds, newLength);
+				}
+			}
+			parent[label] = label;
+			runCounts[label] = 0;
+			if (isAccumulating) {
+				moments[label] = new MomentAccumulator(xPos, yPos, momentOrder);
+				leftBounds[label] = xPos;
+				rightBounds[label] = xPos;
+				upperBounds[label] = yPos;
+				lowerBounds[label] = yPos;
+			}
+			return label;
+		}
+
+		int find(int label) {
+			int root = label;
+			while (parent[root] != root) {
+				root = parent[root];
+			}
+			//path compression
+			while (parent[label] != root) {
+				int next = parent[label];
+				parent[label] = root;
+				label = next;
+			}
+			return root;
+		}
+
+		private void union(int labelA, int labelB) {
+			int rootA = find(labelA);
+			int rootB = find(labelB);
+
+			//the smaller label always becomes the root
+			if (rootA < rootB) {
+				parent[rootB] = rootA;
+			} else if (rootB < rootA) {
+				parent[rootA] = rootB;
+			}
+		}
+
+		//writes the dense labels and fills the run lists
+		void secondPass() {
+			int regionLabels[] = RegionLabeler.this.parent;
+			for (int yPos = firstRow; yPos < endRow; ++yPos) {
+				int rowStart = yPos * imageWidth;
+				int xPos = 0;
+				while (xPos < imageWidth) {
+					int label = labels[rowStart + xPos];
+					if (label == BACKGROUND_LABEL) {
+						++xPos;
+						continue;
+					}
+
+					//all pixels of a run belong to the same region
+					label += labelBase;
+					int region = regionLabels[label];
+					int runStart = xPos;
+					while (xPos < imageWidth && labels[rowStart + xPos] != BACKGROUND_LABEL) {
+						labels[rowStart + xPos] = region;
+						++xPos;
+					}
+
+					int runIndex = (regionOffsets[region] + fillPositions[fillRepresentatives[label]]++) * 3;
+					regionRuns[runIndex] = yPos;
+					regionRuns[runIndex + 1] = runStart;
+					regionRuns[runIndex + 2] = xPos - 1;
+				}
+			}
+		}
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void setParallelism(final int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	public int getStripHeight() {
+		return stripHeight;
+	}
+
+	public void setStripHeight(final int stripHeight) {
+		this.stripHeight = Math.max(1, stripHeight);
+	}
+
+	public int getMomentOrder() {
+		return momentOrder;
+	}
+
+	//with NO_MOMENTS the moments, areas and bounds of the regions are not available
+	public void setMomentOrder(final int momentOrder) {
+		if (momentOrder != NO_MOMENTS && momentOrder != 1 && momentOrder != MomentAccumulator.MAX_ORDER) throw new IllegalArgumentException("Unsupported moment order " + momentOrder);
+		this.momentOrder = momentOrder;
+	}
+
+	public int getRegionCount() {
+		return regionCount;
+	}
+
+	public int[] getLabels() {
+		return labels;
+	}
+
+	//hands the label map over to the caller, the next labeling allocates a new one
+	public int[] releaseLabels() {
+		int releasedLabels[] = labels;
+		labels = new int[0];
+		return releasedLabels;
+	}
+
+	public int getLabel(final int xPos, final int yPos) {
+		return labels[yPos * imageWidth + xPos];
+	}
+
+	public int getArea(final int label) {
+		return (int) regionMoments[label].getMoment(0, 0);
+	}
+
+	public MomentAccumulator getMoments(final int label) {
+		return regionMoments[label];
+	}
+
+	public RegionRuns getRegionRuns(final int label) {
+		int runs[] = Arrays.copyOfRange(regionRuns, regionOffsets[label] * 3, regionOffsets[label + 1] * 3);
+		return new RegionRuns(runs, regionOffsets[label + 1] - regionOffsets[label]);
+	}
+
+	public int getLeftBound(final int label) {
+		return leftBounds[label];
+	}
+
+	public int getRightBound(final int label) {
+		return rightBounds[label];
+	}
+
+	public int getUpperBound(final int label) {
+		return upperBounds[label];
+	}
+
+	public int getLowerBound(final int label) {
+		return lowerBounds[label];
+	}
+
+	public int getImageWidth() {
+		return imageWidth;
+	}
+
+	public int getImageHeight() {
+		return imageHeight;
+	}
+}
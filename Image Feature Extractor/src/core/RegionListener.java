@@ -24,12 +24,6 @@ THE SOFTWARE.
 
 package core;
 
-public class Pixel {
-	public int x;
-	public int y;
-	
-	public Pixel(int x, int y){
-		this.x = x;
-		this.y = y;
-	}
+public interface RegionListener {
+	public void onRegion(Region region);
 }
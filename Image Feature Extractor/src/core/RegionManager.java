@@ -24,19 +24,32 @@ THE SOFTWARE.
 
 package core;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
+/**
+ * Store of the regions of one analysis. getInstance() returns the default
+ * store used by the GUI, sessions can create their own.
+ *
+ * Region ids are dense, so the regions are kept in an array indexed by id.
+ */
 public class RegionManager {
 	
 	private int regionID;
+	//counts changes of the region set
+	private int revision;
 
-	private HashMap<Integer, Region> regions;
+	//null for unused ids
+	private Region regions[];
+	//rows of the regions made by createRegion
+	private RegionTable table;
 	
-	private RegionManager() {
+	public RegionManager() {
 		regionID = 0;
 		
-		regions = new HashMap<Integer, Region>();
+		regions = new Region[16];
+		table = new RegionTable();
 	}
 
 	private static class Holder {
@@ -48,27 +61,73 @@ public class RegionManager {
 	}
 	
 	public Region createRegion(){
-		Region descriptor = new Region(regionID);
-		regions.put(regionID, descriptor);
-		
-		++regionID;
+		Region descriptor = table.getRegion(table.addRow(regionID));
+		addRegion(descriptor);
 		return descriptor;
 	}
 	
+	public void addRegion(Region region){
+		int id = region.getID();
+		if (id < 0) {
+			throw new IllegalArgumentException("Negative region id " + id);
+		}
+		if (id >= regions.length) {
+			regions = Arrays.copyOf(regions, Math.max(id + 1, regions.length * 2));
+		}
+		regions[id] = region;
+		++revision;
+		
+		if(id >= regionID){
+			regionID = id + 1;
+		}
+	}
+	
 	public boolean hasRegion(int id){
-		return regions.containsKey(id);
+		return id >= 0 && id < regionID && regions[id] != null;
 	}
 	
 	public Region getRegion(int id){
-		return regions.get(id);
+		return hasRegion(id) ? regions[id] : null;
 	}
 	
+	//ids in ascending order
 	public Iterator<Integer> getRegionIDs(){
-		return regions.keySet().iterator();
+		return new Iterator<Integer>() {
+			private int next = advance(0);
+
+			private int advance(int id) {
+				while (id < regionID && regions[id] == null) {
+					++id;
+				}
+				return id;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next < regionID;
+			}
+
+			@Override
+			public Integer next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				int id = next;
+				next = advance(id + 1);
+				return id;
+			}
+		};
 	}
 	
 	public void clear(){
+		Arrays.fill(regions, 0, regionID, null);
+		//regions of the old table may still be referenced, so it is replaced rather than reused
+		table = new RegionTable();
 		regionID = 0;
-		regions.clear();
+		++revision;
+	}
+	
+	public int getRevision(){
+		return revision;
 	}
 }
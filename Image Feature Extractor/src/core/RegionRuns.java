@@ -0,0 +1,118 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Pixels of a region stored as horizontal runs. Each run is packed as the
+ * three ints (row, xStart, xEnd), the end is inclusive. Runs are sorted by
+ * row and start position.
+ */
+public class RegionRuns {
+
+	private static final int RUN_SIZE = 3;
+
+	private final int runs[];
+	private final int runCount;
+
+	public RegionRuns(final int runs[], final int runCount) {
+		if (runs.length < runCount * RUN_SIZE) throw new IndexOutOfBoundsException();
+		this.runs = runs;
+		this.runCount = runCount;
+	}
+
+	public int getRunCount() {
+		return runCount;
+	}
+
+	public int getRow(final int run) {
+		return runs[run * RUN_SIZE];
+	}
+
+	public int getStart(final int run) {
+		return runs[run * RUN_SIZE + 1];
+	}
+
+	public int getEnd(final int run) {
+		return runs[run * RUN_SIZE + 2];
+	}
+
+	public long getArea() {
+		long area = 0;
+		for (int run = 0; run < runCount; ++run) {
+			area += getEnd(run) - getStart(run) + 1;
+		}
+		return area;
+	}
+
+	public boolean contains(final int xPos, final int yPos) {
+		//first run of the row
+		int low = 0;
+		int high = runCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (getRow(middle) < yPos) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		for (int run = low; run < runCount && getRow(run) == yPos; ++run) {
+			if (xPos >= getStart(run) && xPos <= getEnd(run)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//sets all pixels of the region in a packed image of the given width
+	public void fill(final int pixels[], final int imageWidth, final int color) {
+		for (int run = 0; run < runCount; ++run) {
+			int rowStart = getRow(run) * imageWidth;
+			Arrays.fill(pixels, rowStart + getStart(run), rowStart + getEnd(run) + 1, color);
+		}
+	}
+
+	//copies the pixels of the region from one packed image to another
+	public void copy(final int sourcePixels[], final int destPixels[], final int imageWidth) {
+		for (int run = 0; run < runCount; ++run) {
+			int start = getRow(run) * imageWidth + getStart(run);
+			System.arraycopy(sourcePixels, start, destPixels, start, getEnd(run) - getStart(run) + 1);
+		}
+	}
+
+	public MomentAccumulator computeMoments() {
+		if (runCount == 0) {
+			return new MomentAccumulator(0, 0);
+		}
+		MomentAccumulator moments = new MomentAccumulator(getStart(0), getRow(0));
+		for (int run = 0; run < runCount; ++run) {
+			moments.addRun(getStart(run), getEnd(run), getRow(run));
+		}
+		return moments;
+	}
+}
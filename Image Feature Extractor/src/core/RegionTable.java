@@ -0,0 +1,387 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Column store of region features. Every feature is one primitive array
+ * indexed by the row of the region, so scanning a feature over all regions
+ * is a plain loop over one array. Region objects are views of a row.
+ *
+ * The column arrays returned by the getters are the backing arrays, only
+ * the first size() entries are valid.
+ *
+ * Features left out at extraction (see FeatureSet) are computed on the
+ * first access through a Region view and kept. Before scanning the columns
+ * of such features, computeMomentFeatures() or computeContours() fills them
+ * for all rows.
+ *
+ * Feature extractors can add columns of their own, identified by name.
+ */
+public class RegionTable {
+
+	public static final int HU_MOMENT_COUNT = 5;
+
+	//bits of the flags column
+	private static final byte HAS_BOUNDING_BOX = 1;
+	private static final byte HAS_CENTROID = 2;
+	//orientation, eccentricity and hu moments are computed
+	static final byte MOMENT_FEATURES = 4;
+	//contours, perimeter and compactness are computed
+	static final byte CONTOURS = 8;
+
+	private int size;
+	//computes left out features, null if all features were computed at extraction
+	private LazyFeatures lazyFeatures;
+
+	private int ids[];
+	private byte flags[];
+	private int boxX[];
+	private int boxY[];
+	private int boxWidth[];
+	private int boxHeight[];
+	private float area[];
+	private float perimeter[];
+	private float compactness[];
+	private int centroidX[];
+	private int centroidY[];
+	private double orientation[];
+	private double eccentricity[];
+	//HU_MOMENT_COUNT values per row
+	private double huMoments[];
+	private RegionRuns runs[];
+	private RegionContours contours[];
+	//columns added by feature extractors
+	private String columnNames[];
+	private double columns[][];
+
+	public RegionTable() {
+		this(16);
+	}
+
+	public RegionTable(final int capacity) {
+		allocate(Math.max(1, capacity));
+		columnNames = new String[0];
+		columns = new double[0][];
+	}
+
+	private void allocate(final int capacity) {
+		ids = new int[capacity];
+		flags = new byte[capacity];
+		boxX = new int[capacity];
+		boxY = new int[capacity];
+		boxWidth = new int[capacity];
+		boxHeight = new int[capacity];
+		area = new float[capacity];
+		perimeter = new float[capacity];
+		compactness = new float[capacity];
+		centroidX = new int[capacity];
+		centroidY = new int[capacity];
+		orientation = new double[capacity];
+		eccentricity = new double[capacity];
+		huMoments = new double[capacity * HU_MOMENT_COUNT];
+		runs = new RegionRuns[capacity];
+		contours = new RegionContours[capacity];
+	}
+
+	private void grow() {
+		int capacity = ids.length * 2;
+		ids = Arrays.copyOf(ids, capacity);
+		flags = Arrays.copyOf(flags, capacity);
+		boxX = Arrays.copyOf(boxX, capacity);
+		boxY = Arrays.copyOf(boxY, capacity);
+		boxWidth = Arrays.copyOf(boxWidth, capacity);
+		boxHeight = Arrays.copyOf(boxHeight, capacity);
+		area = Arrays.copyOf(area, capacity);
+		perimeter = Arrays.copyOf(perimeter, capacity);
+		compactness = Arrays.copyOf(compactness, capacity);
+		centroidX = Arrays.copyOf(centroidX, capacity);
+		centroidY = Arrays.copyOf(centroidY, capacity);
+		orientation = Arrays.copyOf(orientation, capacity);
+		eccentricity = Arrays.copyOf(eccentricity, capacity);
+		huMoments = Arrays.copyOf(huMoments, capacity * HU_MOMENT_COUNT);
+		runs = Arrays.copyOf(runs, capacity);
+		contours = Arrays.copyOf(contours, capacity);
+		for (int column = 0; column < columns.length; ++column) {
+			columns[column] = Arrays.copyOf(columns[column], capacity);
+		}
+	}
+
+	//appends an empty row and returns its index
+	public int addRow(final int id) {
+		if (size == ids.length) {
+			grow();
+		}
+		ids[size] = id;
+		return size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	void setLazyFeatures(final LazyFeatures lazyFeatures) {
+		this.lazyFeatures = lazyFeatures;
+	}
+
+	void setComputed(final int row, final byte features) {
+		flags[row] |= features;
+	}
+
+	//which features of the rows are set, see the bits above
+	byte[] getFlags() {
+		return flags;
+	}
+
+	void requireMomentFeatures(final int row) {
+		if (lazyFeatures != null) {
+			require(row, MOMENT_FEATURES);
+		}
+	}
+
+	void requireContours(final int row) {
+		if (lazyFeatures != null) {
+			require(row, CONTOURS);
+		}
+	}
+
+	private synchronized void require(final int row, final byte features) {
+		if ((flags[row] & features) != 0) {
+			return;
+		}
+		if (features == CONTOURS) {
+			lazyFeatures.computeContours(this, row);
+		} else {
+			lazyFeatures.computeMomentFeatures(this, row);
+		}
+		flags[row] |= features;
+	}
+
+	//fills the orientation, eccentricity and hu moment columns of all rows
+	public void computeMomentFeatures() {
+		if (lazyFeatures != null) {
+			for (int row = 0; row < size; ++row) {
+				require(row, MOMENT_FEATURES);
+			}
+		}
+	}
+
+	//fills the contours, perimeter and compactness columns of all rows
+	public void computeContours() {
+		if (lazyFeatures != null) {
+			for (int row = 0; row < size; ++row) {
+				require(row, CONTOURS);
+			}
+		}
+	}
+
+	//view of a row, views of the same row are equal
+	public Region getRegion(final int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+		}
+		return new Region(this, row);
+	}
+
+	public int getID(final int row) {
+		return ids[row];
+	}
+
+	public boolean hasBoundingBox(final int row) {
+		return (flags[row] & HAS_BOUNDING_BOX) != 0;
+	}
+
+	public void setBoundingBox(final int row, final int xPos, final int yPos, final int width, final int height) {
+		boxX[row] = xPos;
+		boxY[row] = yPos;
+		boxWidth[row] = width;
+		boxHeight[row] = height;
+		flags[row] |= HAS_BOUNDING_BOX;
+	}
+
+	public void clearBoundingBox(final int row) {
+		flags[row] &= ~HAS_BOUNDING_BOX;
+	}
+
+	public boolean hasCentroid(final int row) {
+		return (flags[row] & HAS_CENTROID) != 0;
+	}
+
+	public void setCentroid(final int row, final int xPos, final int yPos) {
+		centroidX[row] = xPos;
+		centroidY[row] = yPos;
+		flags[row] |= HAS_CENTROID;
+	}
+
+	public void clearCentroid(final int row) {
+		flags[row] &= ~HAS_CENTROID;
+	}
+
+	public void setArea(final int row, final float value) {
+		area[row] = value;
+	}
+
+	public void setPerimeter(final int row, final float value) {
+		perimeter[row] = value;
+	}
+
+	public void setCompactness(final int row, final float value) {
+		compactness[row] = value;
+	}
+
+	public void setOrientationAngle(final int row, final double value) {
+		orientation[row] = value;
+	}
+
+	public void setEccentricity(final int row, final double value) {
+		eccentricity[row] = value;
+	}
+
+	//num is 1..HU_MOMENT_COUNT
+	public double getHuMoment(final int row, final int num) {
+		return huMoments[row * HU_MOMENT_COUNT + num - 1];
+	}
+
+	public void setHuMoment(final int row, final int num, final double value) {
+		huMoments[row * HU_MOMENT_COUNT + num - 1] = value;
+	}
+
+	public RegionRuns getRuns(final int row) {
+		return runs[row];
+	}
+
+	public void setRuns(final int row, final RegionRuns value) {
+		runs[row] = value;
+	}
+
+	public RegionContours getContours(final int row) {
+		return contours[row];
+	}
+
+	public void setContours(final int row, final RegionContours value) {
+		contours[row] = value;
+		if (value != null) {
+			flags[row] |= CONTOURS;
+		}
+	}
+
+	//adds a column of the name if there is none yet, returns its index
+	public int addColumn(final String name) {
+		int column = getColumnIndex(name);
+		if (column >= 0) {
+			return column;
+		}
+		column = columnNames.length;
+		columnNames = Arrays.copyOf(columnNames, column + 1);
+		columns = Arrays.copyOf(columns, column + 1);
+		columnNames[column] = name;
+		columns[column] = new double[ids.length];
+		return column;
+	}
+
+	//index of the added column of the name, -1 if there is none
+	public int getColumnIndex(final String name) {
+		for (int column = 0; column < columnNames.length; ++column) {
+			if (columnNames[column].equals(name)) {
+				return column;
+			}
+		}
+		return -1;
+	}
+
+	public int getColumnCount() {
+		return columnNames.length;
+	}
+
+	public String getColumnName(final int column) {
+		return columnNames[column];
+	}
+
+	public double getValue(final int row, final int column) {
+		return columns[column][row];
+	}
+
+	public void setValue(final int row, final int column, final double value) {
+		columns[column][row] = value;
+	}
+
+	//columns
+	public double[] getColumn(final int column) {
+		return columns[column];
+	}
+
+	public int[] getIDs() {
+		return ids;
+	}
+
+	public int[] getBoxX() {
+		return boxX;
+	}
+
+	public int[] getBoxY() {
+		return boxY;
+	}
+
+	public int[] getBoxWidth() {
+		return boxWidth;
+	}
+
+	public int[] getBoxHeight() {
+		return boxHeight;
+	}
+
+	public float[] getArea() {
+		return area;
+	}
+
+	public float[] getPerimeter() {
+		return perimeter;
+	}
+
+	public float[] getCompactness() {
+		return compactness;
+	}
+
+	public int[] getCentroidX() {
+		return centroidX;
+	}
+
+	public int[] getCentroidY() {
+		return centroidY;
+	}
+
+	public double[] getOrientationAngle() {
+		return orientation;
+	}
+
+	public double[] getEccentricity() {
+		return eccentricity;
+	}
+
+	public double[] getHuMoments() {
+		return huMoments;
+	}
+}
@@ -0,0 +1,152 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.util.Arrays;
+
+/**
+ * k-d tree over the feature vectors (orientation, eccentricity, hu1..hu5)
+ * of regions for range queries with per feature tolerances.
+ *
+ * The tree is implicit: the node of a range of points is its median point,
+ * the points before and after it form the subtrees.
+ */
+public class SimilarityIndex {
+
+	public static final int FEATURE_COUNT = 7;
+
+	private final int ids[];
+	//feature vectors in tree order, FEATURE_COUNT values per point
+	private final double features[];
+
+	public SimilarityIndex(final RegionTable regions) {
+		int count = regions.size();
+		int points[] = new int[count];
+		double vectors[] = new double[count * FEATURE_COUNT];
+
+		//copy the columns into the interleaved vectors
+		regions.computeMomentFeatures();
+		double orientation[] = regions.getOrientationAngle();
+		double eccentricity[] = regions.getEccentricity();
+		double huMoments[] = regions.getHuMoments();
+		for (int row = 0; row < count; ++row) {
+			int offset = row * FEATURE_COUNT;
+			vectors[offset] = orientation[row];
+			vectors[offset + 1] = eccentricity[row];
+			System.arraycopy(huMoments, row * RegionTable.HU_MOMENT_COUNT, vectors, offset + 2, RegionTable.HU_MOMENT_COUNT);
+		}
+
+		//regions with undefined features never compare as similar, leave them out
+		int regionIDs[] = regions.getIDs();
+		int kept = 0;
+		for (int row = 0; row < count; ++row) {
+			if (!hasNaN(vectors, row * FEATURE_COUNT)) {
+				points[kept] = regionIDs[row];
+				System.arraycopy(vectors, row * FEATURE_COUNT, vectors, kept * FEATURE_COUNT, FEATURE_COUNT);
+				++kept;
+			}
+		}
+		ids = Arrays.copyOf(points, kept);
+		features = Arrays.copyOf(vectors, kept * FEATURE_COUNT);
+		KdTree.build(features, ids, kept);
+	}
+
+	private static boolean hasNaN(final double vector[], final int offset) {
+		for (int dim = 0; dim < FEATURE_COUNT; ++dim) {
+			if (Double.isNaN(vector[offset + dim])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//writes the feature vector of the region to the array
+	public static void getFeatures(final Region region, final double dest[], final int offset) {
+		dest[offset] = region.getOrientationAngle();
+		dest[offset + 1] = region.getEccentricity();
+		for (int num = 1; num <= 5; ++num) {
+			dest[offset + 1 + num] = region.getHuMoment(num);
+		}
+	}
+
+	/**
+	 * Ids of all regions whose features lie strictly between the lower and
+	 * upper bounds in every dimension, in ascending order.
+	 */
+	public int[] query(final double lower[], final double upper[]) {
+		IntCollector found = new IntCollector();
+		query(0, ids.length, 0, lower, upper, found);
+		int result[] = found.toArray();
+		Arrays.sort(result);
+		return result;
+	}
+
+	private void query(final int from, final int to, final int depth, final double lower[], final double upper[],
+			final IntCollector found) {
+		if (from >= to) {
+			return;
+		}
+		int dim = depth % FEATURE_COUNT;
+		int median = (from + to) >>> 1;
+		double value = features[median * FEATURE_COUNT + dim];
+
+		boolean inside = true;
+		for (int d = 0; d < FEATURE_COUNT && inside; ++d) {
+			double v = features[median * FEATURE_COUNT + d];
+			inside = v > lower[d] && v < upper[d];
+		}
+		if (inside) {
+			found.add(ids[median]);
+		}
+
+		//the left subtree holds values <= value, the right one values >= value
+		if (value > lower[dim]) {
+			query(from, median, depth + 1, lower, upper, found);
+		}
+		if (value < upper[dim]) {
+			query(median + 1, to, depth + 1, lower, upper, found);
+		}
+	}
+
+	public int size() {
+		return ids.length;
+	}
+
+	private static class IntCollector {
+		private int values[] = new int[16];
+		private int count;
+
+		void add(final int value) {
+			if (count == values.length) {
+				values = Arrays.copyOf(values, count * 2);
+			}
+			values[count++] = value;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, count);
+		}
+	}
+}
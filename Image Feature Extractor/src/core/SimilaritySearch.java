@@ -0,0 +1,309 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Regions similar to one reference feature vector, kept up to date while
+ * the tolerances change.
+ *
+ * A candidate is similar if every feature f satisfies
+ * reference - tolerance < f < reference + tolerance, as in a query of the
+ * SimilarityIndex. Per feature the candidates above the reference are sorted
+ * ascending and those below descending, so the candidates within a
+ * tolerance are a prefix of both lists. Changing a tolerance moves the prefix
+ * ends found by binary search and only touches the candidates in between.
+ */
+public class SimilaritySearch {
+
+	private static final int DIMS = SimilarityIndex.FEATURE_COUNT;
+
+	private final double reference[];
+	private final double tolerances[];
+	//region ids of the candidates
+	private final int ids[];
+	//candidate of a region id, -1 for other regions
+	private final int candidateOfID[];
+	//features within the tolerance per candidate, DIMS if similar
+	private final int matchCounts[];
+
+	//per feature: values above the reference ascending, below it descending, with their candidates
+	private final double upperValues[][];
+	private final int upperCandidates[][];
+	private final double lowerValues[][];
+	private final int lowerCandidates[][];
+	//candidates with a value equal to the reference
+	private final int equalCandidates[][];
+
+	//prefix lengths within the current tolerance
+	private final int upperCounts[];
+	private final int lowerCounts[];
+	private final boolean isEqualWithin[];
+
+	private int similarCount;
+
+	/**
+	 * Candidates are the given regions, features holds their vectors with
+	 * DIMS values each in the order of SimilarityIndex.getFeatures().
+	 */
+	public SimilaritySearch(final int regionIDs[], final double features[], final double reference[],
+			final double tolerances[]) {
+		int count = regionIDs.length;
+		ids = regionIDs.clone();
+		int maxID = -1;
+		for (int id : ids) {
+			maxID = Math.max(maxID, id);
+		}
+		candidateOfID = new int[maxID + 1];
+		Arrays.fill(candidateOfID, -1);
+		for (int candidate = 0; candidate < count; ++candidate) {
+			candidateOfID[ids[candidate]] = candidate;
+		}
+		this.reference = reference.clone();
+		this.tolerances = tolerances.clone();
+		matchCounts = new int[count];
+		upperValues = new double[DIMS][];
+		upperCandidates = new int[DIMS][];
+		lowerValues = new double[DIMS][];
+		lowerCandidates = new int[DIMS][];
+		equalCandidates = new int[DIMS][];
+		upperCounts = new int[DIMS];
+		lowerCounts = new int[DIMS];
+		isEqualWithin = new boolean[DIMS];
+
+		double upper[] = new double[count];
+		int upperIDs[] = new int[count];
+		double lower[] = new double[count];
+		int lowerIDs[] = new int[count];
+		int equal[] = new int[count];
+		for (int dim = 0; dim < DIMS; ++dim) {
+			//NaN values are in no list and never within the tolerance
+			int upperCount = 0;
+			int lowerCount = 0;
+			int equalCount = 0;
+			for (int candidate = 0; candidate < count; ++candidate) {
+				double value = features[candidate * DIMS + dim];
+				if (value > reference[dim]) {
+					upper[upperCount] = value;
+					upperIDs[upperCount++] = candidate;
+				} else if (value < reference[dim]) {
+					//negated, so both lists sort ascending
+					lower[lowerCount] = -value;
+					lowerIDs[lowerCount++] = candidate;
+				} else if (value == reference[dim]) {
+					equal[equalCount++] = candidate;
+				}
+			}
+			upperValues[dim] = Arrays.copyOf(upper, upperCount);
+			upperCandidates[dim] = Arrays.copyOf(upperIDs, upperCount);
+			lowerValues[dim] = Arrays.copyOf(lower, lowerCount);
+			lowerCandidates[dim] = Arrays.copyOf(lowerIDs, lowerCount);
+			equalCandidates[dim] = Arrays.copyOf(equal, equalCount);
+			sortByValue(upperValues[dim], upperCandidates[dim]);
+			sortByValue(lowerValues[dim], lowerCandidates[dim]);
+			for (int i = 0; i < lowerCount; ++i) {
+				lowerValues[dim][i] = -lowerValues[dim][i];
+			}
+
+			upperCounts[dim] = countUpper(dim, tolerances[dim]);
+			lowerCounts[dim] = countLower(dim, tolerances[dim]);
+			isEqualWithin[dim] = isEqualWithin(dim, tolerances[dim]);
+			for (int i = 0; i < upperCounts[dim]; ++i) {
+				++matchCounts[upperCandidates[dim][i]];
+			}
+			for (int i = 0; i < lowerCounts[dim]; ++i) {
+				++matchCounts[lowerCandidates[dim][i]];
+			}
+			if (isEqualWithin[dim]) {
+				for (int candidate : equalCandidates[dim]) {
+					++matchCounts[candidate];
+				}
+			}
+		}
+		for (int candidate = 0; candidate < count; ++candidate) {
+			if (matchCounts[candidate] == DIMS) {
+				++similarCount;
+			}
+		}
+	}
+
+	//number of values above the reference with value < reference + tolerance
+	private int countUpper(final int dim, final double tolerance) {
+		double bound = reference[dim] + tolerance;
+		double values[] = upperValues[dim];
+		int low = 0;
+		int high = values.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (values[middle] < bound) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	//number of values below the reference with value > reference - tolerance
+	private int countLower(final int dim, final double tolerance) {
+		double bound = reference[dim] - tolerance;
+		double values[] = lowerValues[dim];
+		int low = 0;
+		int high = values.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (values[middle] > bound) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private boolean isEqualWithin(final int dim, final double tolerance) {
+		return reference[dim] - tolerance < reference[dim] && reference[dim] < reference[dim] + tolerance;
+	}
+
+	/**
+	 * Sets the tolerance of a feature and returns the ids of the regions
+	 * that became similar or stopped being similar.
+	 */
+	public int[] setTolerance(final int dim, final double tolerance) {
+		int changed[] = new int[16];
+		int changedCount = 0;
+		tolerances[dim] = tolerance;
+
+		int upperCount = countUpper(dim, tolerance);
+		int lowerCount = countLower(dim, tolerance);
+		boolean isEqual = isEqualWithin(dim, tolerance);
+
+		int candidates[] = upperCandidates[dim];
+		int step = upperCount > upperCounts[dim] ? 1 : -1;
+		for (int i = Math.min(upperCount, upperCounts[dim]); i < Math.max(upperCount, upperCounts[dim]); ++i) {
+			changedCount = addMatch(candidates[i], step, changed, changedCount);
+			changed = grow(changed, changedCount);
+		}
+		candidates = lowerCandidates[dim];
+		step = lowerCount > lowerCounts[dim] ? 1 : -1;
+		for (int i = Math.min(lowerCount, lowerCounts[dim]); i < Math.max(lowerCount, lowerCounts[dim]); ++i) {
+			changedCount = addMatch(candidates[i], step, changed, changedCount);
+			changed = grow(changed, changedCount);
+		}
+		if (isEqual != isEqualWithin[dim]) {
+			for (int candidate : equalCandidates[dim]) {
+				changedCount = addMatch(candidate, isEqual ? 1 : -1, changed, changedCount);
+				changed = grow(changed, changedCount);
+			}
+		}
+		upperCounts[dim] = upperCount;
+		lowerCounts[dim] = lowerCount;
+		isEqualWithin[dim] = isEqual;
+
+		//all prefixes of the feature move the same way, so every candidate changes at most once
+		int result[] = new int[changedCount];
+		for (int i = 0; i < changedCount; ++i) {
+			result[i] = ids[changed[i]];
+		}
+		return result;
+	}
+
+	//changes the match count of a candidate, records it if its similarity changed
+	private int addMatch(final int candidate, final int step, final int changed[], final int changedCount) {
+		boolean wasSimilar = matchCounts[candidate] == DIMS;
+		matchCounts[candidate] += step;
+		boolean isSimilar = matchCounts[candidate] == DIMS;
+		if (wasSimilar == isSimilar) {
+			return changedCount;
+		}
+		similarCount += isSimilar ? 1 : -1;
+		changed[changedCount] = candidate;
+		return changedCount + 1;
+	}
+
+	private static int[] grow(final int array[], final int count) {
+		return count == array.length ? Arrays.copyOf(array, count * 2) : array;
+	}
+
+	public double getTolerance(final int dim) {
+		return tolerances[dim];
+	}
+
+	public int getSimilarCount() {
+		return similarCount;
+	}
+
+	public boolean isSimilar(final int regionID) {
+		if (regionID < 0 || regionID >= candidateOfID.length || candidateOfID[regionID] < 0) {
+			return false;
+		}
+		return matchCounts[candidateOfID[regionID]] == DIMS;
+	}
+
+	//ids of the similar regions in candidate order
+	public int[] getSimilarRegions() {
+		int result[] = new int[similarCount];
+		int count = 0;
+		for (int candidate = 0; candidate < ids.length; ++candidate) {
+			if (matchCounts[candidate] == DIMS) {
+				result[count++] = ids[candidate];
+			}
+		}
+		return result;
+	}
+
+	//sorts the values ascending and moves the candidates along, a counting sort on the ranks of the
+	//values as in RegionClustering
+	private static void sortByValue(final double values[], final int candidates[]) {
+		int n = values.length;
+		double sortedValues[] = values.clone();
+		Arrays.sort(sortedValues);
+		double distinct[] = new double[n];
+		int distinctCount = 0;
+		for (int i = 0; i < n; ++i) {
+			//Double.compare keeps -0.0 and 0.0 apart, as Arrays.sort and binarySearch do
+			if (i == 0 || Double.compare(sortedValues[i], sortedValues[i - 1]) != 0) {
+				distinct[distinctCount++] = sortedValues[i];
+			}
+		}
+
+		int starts[] = new int[distinctCount + 1];
+		int ranks[] = new int[n];
+		for (int i = 0; i < n; ++i) {
+			ranks[i] = Arrays.binarySearch(distinct, 0, distinctCount, values[i]);
+			++starts[ranks[i] + 1];
+		}
+		for (int r = 0; r < distinctCount; ++r) {
+			starts[r + 1] += starts[r];
+		}
+		int sortedCandidates[] = new int[n];
+		for (int i = 0; i < n; ++i) {
+			sortedCandidates[starts[ranks[i]]++] = candidates[i];
+		}
+		System.arraycopy(sortedValues, 0, values, 0, n);
+		System.arraycopy(sortedCandidates, 0, candidates, 0, n);
+	}
+}
@@ -0,0 +1,575 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package core;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.event.IIOReadUpdateListener;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataFormatImpl;
+import javax.imageio.stream.ImageInputStream;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Labels 4-connected foreground regions row by row without holding the
+ * image or a label map in memory.
+ *
+ * The image is decoded once from top to bottom. Each row is labeled as soon
+ * as the reader reports it, and the reader writes into a ring of bandHeight
+ * rows instead of a full image. Readers that store the image in strips or
+ * tiles are read band by band through their source region instead, because
+ * they can seek to a band. Interlaced and progressive images are also read
+ * band by band, which decodes the image from the top for every band.
+ *
+ * Only the labels of the previous row are carried over to the next row. A
+ * region is reported to the listener as soon as a row contains none of its
+ * pixels, because it cannot grow any more. Memory use is bounded by the band
+ * size and the number of open regions. Reported regions carry their features
+ * but no pixel data, and their ids follow the order in which they are
+ * completed.
+ */
+public class StreamingLabeler {
+
+	public static final int DEFAULT_BAND_HEIGHT = 64;
+	private static final int NO_LABEL = -1;
+	//reported regions are rows of tables of this size, a table is freed once none of its regions is referenced
+	private static final int TABLE_ROWS = 256;
+
+	private int bandHeight;
+	private RegionAnalyzer regionAnalyser;
+	private RegionListener listener;
+	private RegionTable regionTable;
+	private int imageWidth;
+	private int regionCount;
+
+	//labels of the current and previous row, open regions of the previous row are 0..openCount-1
+	private int rowLabels[];
+	private int previousRowLabels[];
+	private int openCount;
+	private int labelCount;
+
+	//union-find table and per label data of the open regions and the new labels of the row
+	private int parent[];
+	private int openIDs[];
+	private MomentAccumulator moments[];
+	private int leftBounds[];
+	private int rightBounds[];
+	private int upperBounds[];
+	private int lowerBounds[];
+
+	//per label data of the regions that stay open, swapped with the arrays above after each row
+	private MomentAccumulator nextMoments[];
+	private int nextLeftBounds[];
+	private int nextRightBounds[];
+	private int nextUpperBounds[];
+	private int nextLowerBounds[];
+
+	public StreamingLabeler() {
+		this(DEFAULT_BAND_HEIGHT);
+	}
+
+	public StreamingLabeler(final int bandHeight) {
+		this.bandHeight = Math.max(1, bandHeight);
+		regionAnalyser = new RegionAnalyzer();
+	}
+
+	//returns the number of regions
+	public int analyze(final File imageFile, final RegionListener listener) throws IOException {
+		ImageInputStream input = ImageIO.createImageInputStream(imageFile);
+		if (input == null) {
+			throw new IOException("Could not open " + imageFile);
+		}
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if (!readers.hasNext()) {
+				throw new IOException("Unsupported image format: " + imageFile);
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input, false, true);
+				return analyze(reader, 0, listener);
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	//reads the image in one pass if the reader cannot seek to a band
+	public int analyze(final ImageReader reader, final int imageIndex, final RegionListener listener) throws IOException {
+		int height = reader.getHeight(imageIndex);
+		int tileHeight = reader.getTileHeight(imageIndex);
+
+		if (tileHeight < height) {
+			//strips and tiles are decoded on their own, so whole strips are read per band
+			analyzeBands(reader, imageIndex, ((bandHeight + tileHeight - 1) / tileHeight) * tileHeight, listener);
+		} else if (isProgressive(reader, imageIndex) || !analyzeSequentially(reader, imageIndex, listener)) {
+			analyzeBands(reader, imageIndex, bandHeight, listener);
+		}
+		return regionCount;
+	}
+
+	//reads the image band by band through the source region of the reader
+	private void analyzeBands(final ImageReader reader, final int imageIndex, final int rowsPerBand,
+			final RegionListener listener) throws IOException {
+		int width = reader.getWidth(imageIndex);
+		int height = reader.getHeight(imageIndex);
+		byte foreground[] = new byte[width];
+		ImageReadParam param = reader.getDefaultReadParam();
+
+		start(width, listener);
+		for (int bandStart = 0; bandStart < height; bandStart += rowsPerBand) {
+			int rows = Math.min(rowsPerBand, height - bandStart);
+			param.setSourceRegion(new Rectangle(0, bandStart, width, rows));
+			PixelSource band = PixelSource.of(reader.read(imageIndex, param));
+
+			for (int row = 0; row < rows; ++row) {
+				band.getForegroundRow(row, foreground);
+				processRow(foreground, bandStart + row);
+			}
+		}
+		finish();
+	}
+
+	/**
+	 * Decodes the image once into a ring of rows and labels every row from the
+	 * update notifications of the reader. Returns false, before any row was
+	 * labeled, if the reader cannot deliver complete rows in order this way.
+	 */
+	private boolean analyzeSequentially(final ImageReader reader, final int imageIndex,
+			final RegionListener listener) throws IOException {
+		int width = reader.getWidth(imageIndex);
+		int height = reader.getHeight(imageIndex);
+		Iterator<ImageTypeSpecifier> types = reader.getImageTypes(imageIndex);
+		if (!types.hasNext()) {
+			return false;
+		}
+		ImageTypeSpecifier type = types.next();
+		ColorModel colorModel = type.getColorModel();
+
+		//the ring has to use the layout the reader would allocate for the whole image
+		int ringRows = Math.min(bandHeight, height);
+		SampleModel ringModel = type.getSampleModel(width, ringRows);
+		int stride = getScanlineStride(ringModel);
+		long size = (long) stride * height;
+		if (stride <= 0 || size > Integer.MAX_VALUE) {
+			return false;
+		}
+		SampleModel imageModel = type.getSampleModel(width, height);
+		if (getScanlineStride(imageModel) != stride) {
+			return false;
+		}
+
+		DataBuffer ringBuffer = ringModel.createDataBuffer();
+		RingDataBuffer imageBuffer = new RingDataBuffer(ringBuffer, (int) size, stride, ringRows);
+		BufferedImage ring = new BufferedImage(colorModel, Raster.createWritableRaster(ringModel, ringBuffer, null),
+				colorModel.isAlphaPremultiplied(), null);
+		BufferedImage image = new BufferedImage(colorModel, Raster.createWritableRaster(imageModel, imageBuffer, null),
+				colorModel.isAlphaPremultiplied(), null);
+
+		ImageReadParam param = reader.getDefaultReadParam();
+		param.setDestination(image);
+		RowListener rows = new RowListener(PixelSource.of(ring), imageBuffer);
+
+		start(width, listener);
+		reader.addIIOReadUpdateListener(rows);
+		try {
+			reader.read(imageIndex, param);
+		} catch (IOException | RuntimeException e) {
+			if (rows.labeledRows > 0) {
+				throw e;
+			}
+			return false;
+		} finally {
+			reader.removeIIOReadUpdateListener(rows);
+		}
+
+		if (rows.labeledRows < height) {
+			if (rows.labeledRows > 0) {
+				throw new IOException("The reader reported only " + rows.labeledRows + " of " + height + " rows");
+			}
+			return false;
+		}
+		finish();
+		return true;
+	}
+
+	//interlaced and progressive images report rows several times, so they cannot be labeled row by row
+	private static boolean isProgressive(final ImageReader reader, final int imageIndex) throws IOException {
+		IIOMetadata metadata = reader.getImageMetadata(imageIndex);
+		if (metadata == null || !metadata.isStandardMetadataFormatSupported()) {
+			return false;
+		}
+		Node root = metadata.getAsTree(IIOMetadataFormatImpl.standardMetadataFormatName);
+		for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+			if (!node.getNodeName().equals("Compression")) {
+				continue;
+			}
+			for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+				if (child.getNodeName().equals("NumProgressiveScans")) {
+					String scans = ((Element) child).getAttribute("value");
+					return !scans.isEmpty() && Integer.parseInt(scans) > 1;
+				}
+			}
+		}
+		return false;
+	}
+
+	//elements per row in every bank, 0 for unknown layouts
+	private static int getScanlineStride(final SampleModel sampleModel) {
+		if (sampleModel instanceof ComponentSampleModel) {
+			return ((ComponentSampleModel) sampleModel).getScanlineStride();
+		} else if (sampleModel instanceof MultiPixelPackedSampleModel) {
+			return ((MultiPixelPackedSampleModel) sampleModel).getScanlineStride();
+		} else if (sampleModel instanceof SinglePixelPackedSampleModel) {
+			return ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+		}
+		return 0;
+	}
+
+	public int analyze(final BufferedImage image, final RegionListener listener) {
+		return analyze(PixelSource.of(image), listener);
+	}
+
+	public int analyze(final PixelSource source, final RegionListener listener) {
+		byte foreground[] = new byte[source.getWidth()];
+
+		start(source.getWidth(), listener);
+		for (int yPos = 0; yPos < source.getHeight(); ++yPos) {
+			source.getForegroundRow(yPos, foreground);
+			processRow(foreground, yPos);
+		}
+		finish();
+		return regionCount;
+	}
+
+	private void start(final int width, final RegionListener listener) {
+		this.listener = listener;
+		regionTable = null;
+		imageWidth = width;
+		regionCount = 0;
+		openCount = 0;
+
+		//a row holds at most (width + 1) / 2 runs, so open and new labels fit into width + 1 slots
+		int capacity = width + 2;
+		rowLabels = new int[width];
+		previousRowLabels = new int[width];
+		Arrays.fill(previousRowLabels, NO_LABEL);
+		parent = new int[capacity];
+		openIDs = new int[capacity];
+		moments = new MomentAccumulator[capacity];
+		leftBounds = new int[capacity];
+		rightBounds = new int[capacity];
+		upperBounds = new int[capacity];
+		lowerBounds = new int[capacity];
+		nextMoments = new MomentAccumulator[capacity];
+		nextLeftBounds = new int[capacity];
+		nextRightBounds = new int[capacity];
+		nextUpperBounds = new int[capacity];
+		nextLowerBounds = new int[capacity];
+	}
+
+	private void processRow(final byte foreground[], final int yPos) {
+		labelCount = openCount;
+		for (int label = 0; label < openCount; ++label) {
+			parent[label] = label;
+		}
+
+		int runStart = 0;
+		int runLabel = NO_LABEL;
+		for (int xPos = 0; xPos < imageWidth; ++xPos) {
+			if (foreground[xPos] == 0) {
+				rowLabels[xPos] = NO_LABEL;
+				continue;
+			}
+
+			int upperLabel = previousRowLabels[xPos];
+			int leftLabel = xPos > 0 ? rowLabels[xPos - 1] : NO_LABEL;
+			int label;
+
+			if (upperLabel != NO_LABEL) {
+				label = upperLabel;
+				if (leftLabel != NO_LABEL && leftLabel != upperLabel) {
+					union(upperLabel, leftLabel);
+				}
+			} else if (leftLabel != NO_LABEL) {
+				label = leftLabel;
+			} else {
+				label = labelCount++;
+				parent[label] = label;
+				moments[label] = new MomentAccumulator(xPos, yPos);
+				leftBounds[label] = xPos;
+				rightBounds[label] = xPos;
+				upperBounds[label] = yPos;
+				lowerBounds[label] = yPos;
+			}
+
+			rowLabels[xPos] = label;
+			if (xPos == 0 || foreground[xPos - 1] == 0) {
+				runStart = xPos;
+				runLabel = label;
+			}
+
+			//all labels of a run get joined, so the run is added to the label of its first pixel
+			if (xPos == imageWidth - 1 || foreground[xPos + 1] == 0) {
+				moments[runLabel].addRun(runStart, xPos, yPos);
+				if (runStart < leftBounds[runLabel]) {
+					leftBounds[runLabel] = runStart;
+				}
+				if (xPos > rightBounds[runLabel]) {
+					rightBounds[runLabel] = xPos;
+				}
+				lowerBounds[runLabel] = yPos;
+			}
+		}
+
+		endRow();
+	}
+
+	//merges equivalent labels, reports completed regions and renumbers the open ones
+	private void endRow() {
+		for (int label = 0; label < labelCount; ++label) {
+			int root = find(label);
+			openIDs[label] = NO_LABEL;
+			if (root != label) {
+				moments[root].merge(moments[label]);
+				leftBounds[root] = Math.min(leftBounds[root], leftBounds[label]);
+				rightBounds[root] = Math.max(rightBounds[root], rightBounds[label]);
+				upperBounds[root] = Math.min(upperBounds[root], upperBounds[label]);
+				lowerBounds[root] = Math.max(lowerBounds[root], lowerBounds[label]);
+			}
+		}
+
+		//regions with pixels in this row stay open
+		int nextOpenCount = 0;
+		for (int xPos = 0; xPos < imageWidth; ++xPos) {
+			int label = rowLabels[xPos];
+			if (label == NO_LABEL) {
+				previousRowLabels[xPos] = NO_LABEL;
+				continue;
+			}
+			int root = find(label);
+			if (openIDs[root] == NO_LABEL) {
+				int openID = nextOpenCount++;
+				openIDs[root] = openID;
+				nextMoments[openID] = moments[root];
+				nextLeftBounds[openID] = leftBounds[root];
+				nextRightBounds[openID] = rightBounds[root];
+				nextUpperBounds[openID] = upperBounds[root];
+				nextLowerBounds[openID] = lowerBounds[root];
+			}
+			previousRowLabels[xPos] = openIDs[root];
+		}
+
+		//open regions of the previous row that did not continue are complete
+		for (int label = 0; label < openCount; ++label) {
+			if (parent[label] == label && openIDs[label] == NO_LABEL) {
+				report(label);
+			}
+		}
+
+		for (int label = 0; label < labelCount; ++label) {
+			moments[label] = null;
+		}
+		swapTables();
+		openCount = nextOpenCount;
+	}
+
+	private void swapTables() {
+		MomentAccumulator swapMoments[] = moments;
+		moments = nextMoments;
+		nextMoments = swapMoments;
+
+		int swap[] = leftBounds;
+		leftBounds = nextLeftBounds;
+		nextLeftBounds = swap;
+
+		swap = rightBounds;
+		rightBounds = nextRightBounds;
+		nextRightBounds = swap;
+
+		swap = upperBounds;
+		upperBounds = nextUpperBounds;
+		nextUpperBounds = swap;
+
+		swap = lowerBounds;
+		lowerBounds = nextLowerBounds;
+		nextLowerBounds = swap;
+	}
+
+	private void finish() {
+		for (int label = 0; label < openCount; ++label) {
+			report(label);
+		}
+		openCount = 0;
+		listener = null;
+		regionTable = null;
+	}
+
+	private void report(final int label) {
+		if (regionTable == null || regionTable.size() == TABLE_ROWS) {
+			regionTable = new RegionTable(TABLE_ROWS);
+		}
+		int row = regionAnalyser.addRegion(regionTable, regionCount++, moments[label],
+				leftBounds[label], upperBounds[label], rightBounds[label], lowerBounds[label]);
+		listener.onRegion(regionTable.getRegion(row));
+	}
+
+	private int find(int label) {
+		int root = label;
+		while (parent[root] != root) {
+			root = parent[root];
+		}
+		//path compression
+		while (parent[label] != root) {
+			int next = parent[label];
+			parent[label] = root;
+			label = next;
+		}
+		return root;
+	}
+
+	private void union(int labelA, int labelB) {
+		int rootA = find(labelA);
+		int rootB = find(labelB);
+
+		//the smaller label always becomes the root
+		if (rootA < rootB) {
+			parent[rootB] = rootA;
+		} else if (rootB < rootA) {
+			parent[rootA] = rootB;
+		}
+	}
+
+	public int getBandHeight() {
+		return bandHeight;
+	}
+
+	//labels the rows of a sequential read in the order the reader completes them
+	private class RowListener implements IIOReadUpdateListener {
+		private final PixelSource ring;
+		private final RingDataBuffer buffer;
+		private final byte foreground[];
+		private int passCount;
+		private int labeledRows;
+
+		RowListener(final PixelSource ring, final RingDataBuffer buffer) {
+			this.ring = ring;
+			this.buffer = buffer;
+			foreground = new byte[ring.getWidth()];
+		}
+
+		public void passStarted(ImageReader source, BufferedImage image, int pass, int minPass, int maxPass,
+				int minX, int minY, int periodX, int periodY, int bands[]) {
+			if (++passCount > 1 || minY != 0 || periodX != 1 || periodY != 1) {
+				throw new IllegalStateException("The image is read in several passes");
+			}
+		}
+
+		public void imageUpdate(ImageReader source, BufferedImage image, int minX, int minY, int width, int height,
+				int periodX, int periodY, int bands[]) {
+			//the GIF reader reports a period of 0 for images that are not interlaced
+			if (minX != 0 || width != imageWidth || periodX > 1 || periodY > 1 || minY != labeledRows) {
+				throw new IllegalStateException("The reader does not report complete rows in order");
+			}
+			for (int yPos = minY; yPos < minY + height; ++yPos) {
+				ring.getForegroundRow(yPos % ring.getHeight(), foreground);
+				++labeledRows;
+				buffer.setFirstOpenRow(labeledRows);
+				processRow(foreground, yPos);
+			}
+		}
+
+		public void passComplete(ImageReader source, BufferedImage image) {
+		}
+
+		public void thumbnailPassStarted(ImageReader source, BufferedImage thumbnail, int pass, int minPass,
+				int maxPass, int minX, int minY, int periodX, int periodY, int bands[]) {
+		}
+
+		public void thumbnailUpdate(ImageReader source, BufferedImage thumbnail, int minX, int minY, int width,
+				int height, int periodX, int periodY, int bands[]) {
+		}
+
+		public void thumbnailPassComplete(ImageReader source, BufferedImage thumbnail) {
+		}
+	}
+
+	/**
+	 * Data of a whole image that keeps only ringRows rows, row y in slot
+	 * y % ringRows of the ring buffer. Writing a row that would overwrite a
+	 * row not yet labeled fails.
+	 */
+	private static class RingDataBuffer extends DataBuffer {
+		private final DataBuffer ring;
+		private final int stride;
+		private final int ringRows;
+		private int firstOpenRow;
+
+		RingDataBuffer(final DataBuffer ring, final int size, final int stride, final int ringRows) {
+			super(ring.getDataType(), size, ring.getNumBanks());
+			this.ring = ring;
+			this.stride = stride;
+			this.ringRows = ringRows;
+		}
+
+		//rows before this one are labeled and may be overwritten
+		void setFirstOpenRow(final int row) {
+			firstOpenRow = row;
+		}
+
+		public int getElem(final int bank, final int index) {
+			int row = index / stride;
+			return ring.getElem(bank, (row % ringRows) * stride + index - row * stride);
+		}
+
+		public void setElem(final int bank, final int index, final int value) {
+			int row = index / stride;
+			if (row < firstOpenRow || row >= firstOpenRow + ringRows) {
+				throw new IllegalStateException("Row " + row + " is not in the read buffer");
+			}
+			ring.setElem(bank, (row % ringRows) * stride + index - row * stride, value);
+		}
+	}
+}
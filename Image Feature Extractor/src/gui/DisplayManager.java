@@ -27,7 +27,8 @@ package gui;
 import java.awt.Color;
 
 /**
- * Singleton class that manages which graphic elements are displayed
+ * Manages which graphic elements are displayed. getInstance() returns the
+ * default settings of the GUI.
  *
  */
 public class DisplayManager {
@@ -61,8 +62,10 @@ public class DisplayManager {
 	private boolean regionIDsVisible;
 	private boolean areaSizeVisible;
 	private boolean orientationVisible;
+	//counts changes of the settings
+	private int revision;
 	
-	private DisplayManager() {
+	public DisplayManager() {
 		
 		boundingBoxesVisible = true;
 		centroidVisible = true;
@@ -84,13 +87,19 @@ public class DisplayManager {
 		return boundingBoxesVisible;
 	}
 	public void setBoundingBoxesVisible(boolean boundingBoxesVisible) {
-		this.boundingBoxesVisible = boundingBoxesVisible;
+		if(this.boundingBoxesVisible != boundingBoxesVisible){
+			this.boundingBoxesVisible = boundingBoxesVisible;
+			++revision;
+		}
 	}
 	public boolean isCentroidVisible() {
 		return centroidVisible;
 	}
 	public void setCentroidVisible(boolean centroidVisible) {
-		this.centroidVisible = centroidVisible;
+		if(this.centroidVisible != centroidVisible){
+			this.centroidVisible = centroidVisible;
+			++revision;
+		}
 	}
 
 	public boolean isContoursVisible() {
@@ -98,7 +107,10 @@ public class DisplayManager {
 	}
 
 	public void setContoursVisible(boolean contoursVisible) {
-		this.contoursVisible = contoursVisible;
+		if(this.contoursVisible != contoursVisible){
+			this.contoursVisible = contoursVisible;
+			++revision;
+		}
 	}
 
 	public boolean isRegionIDsVisible() {
@@ -106,7 +118,10 @@ public class DisplayManager {
 	}
 
 	public void setRegionIDsVisible(boolean regionIDsVisible) {
-		this.regionIDsVisible = regionIDsVisible;
+		if(this.regionIDsVisible != regionIDsVisible){
+			this.regionIDsVisible = regionIDsVisible;
+			++revision;
+		}
 	}
 
 	public boolean isAreaSizeVisible() {
@@ -114,7 +129,10 @@ public class DisplayManager {
 	}
 
 	public void setAreaSizeVisible(boolean areaSizeVisible) {
-		this.areaSizeVisible = areaSizeVisible;
+		if(this.areaSizeVisible != areaSizeVisible){
+			this.areaSizeVisible = areaSizeVisible;
+			++revision;
+		}
 	}
 
 	public boolean isOrientationVisible() {
@@ -122,6 +140,13 @@ public class DisplayManager {
 	}
 
 	public void setOrientationVisible(boolean orientationVisible) {
-		this.orientationVisible = orientationVisible;
+		if(this.orientationVisible != orientationVisible){
+			this.orientationVisible = orientationVisible;
+			++revision;
+		}
+	}
+
+	public int getRevision() {
+		return revision;
 	}
 }
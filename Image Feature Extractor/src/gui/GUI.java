@@ -28,8 +28,11 @@ import java.awt.Dimension;
 import java.awt.GridLayout;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.io.File;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -39,14 +42,19 @@ import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JSlider;
 import javax.swing.JTable;
+import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.MouseInputAdapter;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
+import core.AnalysisListener;
+import core.AnalysisResult;
 import core.ImageAnalyzer;
 import core.Region;
 import core.RegionManager;
@@ -54,6 +62,8 @@ import core.RegionManager;
 public class GUI extends JFrame implements ChangeListener{
 	
 	private static final long serialVersionUID = 5601258703065991698L;
+	//slider changes within this time are applied together
+	private static final int THRESHOLD_DELAY = 30;
 	private String windowTitle;
 	private ImageComponent sourceImage;
 	private ImageAnalyzer imgAnalyser;
@@ -68,6 +78,11 @@ public class GUI extends JFrame implements ChangeListener{
 	
 	private JTable selectedRegionTable;
 	private JTable compareRegionTable;
+	private JProgressBar analysisProgress;
+	
+	//slider values not yet given to the analyzer, NaN if unchanged
+	private float pendingHuTresholds[];
+	private Timer thresholdTimer;
 
 	public GUI() {
 		//create component to display image
@@ -89,6 +104,15 @@ public class GUI extends JFrame implements ChangeListener{
 		setLocationRelativeTo(null);
 		
 		selectedRegionID = -1;
+		
+		pendingHuTresholds = new float[4];
+		Arrays.fill(pendingHuTresholds, Float.NaN);
+		thresholdTimer = new Timer(THRESHOLD_DELAY, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				applyHuTresholds();
+			}
+		});
+		thresholdTimer.setRepeats(false);
 	}
 	
 	public void create(){
@@ -236,7 +260,12 @@ public class GUI extends JFrame implements ChangeListener{
 		regionDataPanel.add(selectedRegionPanel);
 		regionDataPanel.add(compareRegionPanel);
 		
+		analysisProgress = new JProgressBar(0, 100);
+		analysisProgress.setStringPainted(true);
+		analysisProgress.setVisible(imgAnalyser.isAnalyzing());
+		
 		mainPanel.add(menuPanel);		
+		mainPanel.add(analysisProgress);
 		mainPanel.add(sourceImage);
 		mainPanel.add(regionDataPanel);
 		
@@ -252,9 +281,7 @@ public class GUI extends JFrame implements ChangeListener{
 				
 				if(e.getButton() == MouseEvent.BUTTON1){
 					if(selectedRegionID != -1){
-						imgAnalyser.deselectAllRegions();
-						imgAnalyser.setRegionSelected(selectedRegionID, true);
-						imgAnalyser.selectSimilarRegions(selectedRegionID);
+						imgAnalyser.selectRegionAndSimilar(selectedRegionID);
 						
 						Region region = RegionManager.getInstance().getRegion(selectedRegionID);
 						
@@ -285,6 +312,27 @@ public class GUI extends JFrame implements ChangeListener{
 		};
 		
 		sourceImage.addMouseListener(mouseAdapter);
+		
+		//progress of the background analysis
+		imgAnalyser.addAnalysisListener(new AnalysisListener() {
+			public void onRegionsFound(List<Region> regions) {
+			}
+			
+			public void onAnalysisProgress(int percent) {
+				analysisProgress.setValue(percent);
+				analysisProgress.setVisible(percent < 100);
+			}
+			
+			public void onAnalysisDone(AnalysisResult result) {
+				analysisProgress.setVisible(false);
+			}
+			
+			public void onAnalysisFailed(Throwable cause) {
+				analysisProgress.setVisible(false);
+				JOptionPane.showMessageDialog(GUI.this, "The image could not be analyzed: " + cause,
+						"Analysis failed", JOptionPane.ERROR_MESSAGE);
+			}
+		});
 	}
 	
 	private File openFile() {
@@ -312,30 +360,39 @@ public class GUI extends JFrame implements ChangeListener{
 	}
 
 
+	//shows the value at once, the thresholds follow at most once per THRESHOLD_DELAY
 	public void stateChanged(ChangeEvent e) {
 		JSlider slider = (JSlider) e.getSource();
+		float value = slider.getValue()/(float)(slider.getMaximum()*10);
 		if(slider.getName() == "hu1"){
-			huMomentValue1.setText(String.valueOf(slider.getValue()/(float)(slider.getMaximum()*10)));
-			imgAnalyser.setHuTreshold(1, slider.getValue()/(float)(slider.getMaximum()*10));
+			huMomentValue1.setText(String.valueOf(value));
+			pendingHuTresholds[0] = value;
 		}
 		if(slider.getName() == "hu2"){
-			huMomentValue2.setText(String.valueOf(slider.getValue()/(float)(slider.getMaximum()*10)));
-			imgAnalyser.setHuTreshold(2, slider.getValue()/(float)(slider.getMaximum()*10));
+			huMomentValue2.setText(String.valueOf(value));
+			pendingHuTresholds[1] = value;
 		}
 		if(slider.getName() == "hu3"){
-			huMomentValue3.setText(String.valueOf(slider.getValue()/(float)(slider.getMaximum()*10)));
-			imgAnalyser.setHuTreshold(3, slider.getValue()/(float)(slider.getMaximum()*10));
+			huMomentValue3.setText(String.valueOf(value));
+			pendingHuTresholds[2] = value;
 		}
 		if(slider.getName() == "hu4"){
-			huMomentValue4.setText(String.valueOf(slider.getValue()/(float)(slider.getMaximum()*10)));
-			imgAnalyser.setHuTreshold(4, slider.getValue()/(float)(slider.getMaximum()*10));
+			huMomentValue4.setText(String.valueOf(value));
+			pendingHuTresholds[3] = value;
 		}
 		
-		if(selectedRegionID != -1){
-			imgAnalyser.deselectAllRegions();
-			imgAnalyser.setRegionSelected(selectedRegionID, true);
-			imgAnalyser.selectSimilarRegions(selectedRegionID);
+		if(!thresholdTimer.isRunning()){
+			thresholdTimer.start();
+		}
+	}
+	
+	//the analyzer updates the selection of similar regions incrementally
+	private void applyHuTresholds(){
+		for(int num = 1; num <= pendingHuTresholds.length; ++num){
+			if(!Float.isNaN(pendingHuTresholds[num - 1])){
+				imgAnalyser.setHuTreshold(num, pendingHuTresholds[num - 1]);
+				pendingHuTresholds[num - 1] = Float.NaN;
+			}
 		}
-		
 	}
 }
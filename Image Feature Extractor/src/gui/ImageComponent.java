@@ -30,35 +30,59 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.geom.GeneralPath;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 import javax.imageio.ImageIO;
 import javax.swing.BorderFactory;
 import javax.swing.JComponent;
 import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
 
+import core.AnalysisListener;
+import core.AnalysisResult;
+import core.AnalysisSession;
 import core.BoundingBox;
 import core.Centroid;
+import core.Extractor;
+import core.ImageAnalyzer;
 import core.Region;
+import core.RegionContours;
 import core.RegionManager;
 import core.ImageChangeListener;
+import core.RegionSelectionListener;
 import core.Region.RegionParams;
 
 
-public class ImageComponent extends JComponent{
+public class ImageComponent extends JComponent implements RegionSelectionListener, AnalysisListener{
 
 	private static final long serialVersionUID = -7037485372677445280L;
 	
-	public final static int BACKGROUND = 0xFFFFFFFF;
-	public final static int FOREGROUND = 0xFF000000;
+	public final static int BACKGROUND = Extractor.BACKGROUND;
+	public final static int FOREGROUND = Extractor.FOREGROUND;
 	
 	private final static int MIN_WIDTH = 200;
 	private final static int MIN_HEIGHT = 200;
 	public final static int MIN_SECTION_SIZE = 1;
 	
+	private final static int OVERLAY_TILE_SIZE = 256;
+	//distance labels and lines may reach beyond a bounding box
+	private final static int OVERLAY_MARGIN = 100;
+	private final static int MAX_OVERLAY_TILES = 128;
+	
+	private final static BasicStroke BB_STROKE = new BasicStroke(DisplayManager.BB_STROKE_WIDTH);
+	private final static BasicStroke CENTROID_STROKE = new BasicStroke(DisplayManager.CENTROID_STROKE_WIDTH);
+	private final static BasicStroke OUTER_CONTOUR_STROKE = new BasicStroke(DisplayManager.OUTER_CONTOUR_STROKE_WIDTH);
+	private final static BasicStroke INNER_CONTOUR_STROKE = new BasicStroke(DisplayManager.INNER_CONTOUR_STROKE_WIDTH);
+	private final static BasicStroke ORIENTATION_LINE_STROKE = new BasicStroke(DisplayManager.ORIENTATION_LINE_STROKE_WIDTH);
+	
 	//image that will never be altered
 	private BufferedImage originalImage;
 	//image thats displayed
@@ -74,8 +98,16 @@ public class ImageComponent extends JComponent{
 	private boolean isViewSectionVisible;
 	private DisplayManager displayMgr;
 	private RegionManager descriptorMgr;
+	private AnalysisSession session;
+	
+	//rendered overlay tiles, least recently used first
+	private LinkedHashMap<Long, BufferedImage> overlayTiles;
+	private int overlayRegionRevision;
+	private int overlayDisplayRevision;
 	
 	private Vector<ImageChangeListener> imageChangeListeners;
+	//decodes the image file being opened, null if none is
+	private SwingWorker<BufferedImage, Void> imageLoader;
 	
 	
 	public ImageComponent(){
@@ -88,37 +120,71 @@ public class ImageComponent extends JComponent{
 		imageChangeListeners = new Vector<ImageChangeListener>();
 		
 		displayMgr = DisplayManager.getInstance();
-		descriptorMgr = RegionManager.getInstance();
+		session = ImageAnalyzer.getInstance().getSession();
+		descriptorMgr = session.getRegionManager();
+		
+		overlayTiles = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+				return size() > MAX_OVERLAY_TILES;
+			}
+		};
 	}
 	
+	//decodes the image on a background thread, opening another image cancels it
 	public void loadImage(final File imagePath){
-		try {
-			//BufferedImage newImage = ImageIO.read(imagePath);
-			originalImage = ImageIO.read(imagePath);
-			displayImage = null;
-			
-			this.imageWidth = originalImage.getWidth();
-			this.imageHeight = originalImage.getHeight();
-			
-			//inform listeners
-			Iterator<ImageChangeListener> changeListenerIt = imageChangeListeners.iterator();
-			while(changeListenerIt.hasNext()){
-				changeListenerIt.next().onImageChange(this);
+		if(imageLoader != null){
+			imageLoader.cancel(true);
+		}
+		imageLoader = new SwingWorker<BufferedImage, Void>() {
+			protected BufferedImage doInBackground() throws IOException {
+				BufferedImage image = ImageIO.read(imagePath);
+				if(image == null){
+					throw new IOException("Unsupported image format: " + imagePath);
+				}
+				return image;
 			}
 			
-			
-			resetViewSection();
-			repaint();
-		} catch (Exception e) {
-			e.printStackTrace();
-			JOptionPane.showMessageDialog(this,
-					"Bild konnte nicht geladen werden.", "Fehler",
-					JOptionPane.ERROR_MESSAGE);
-			originalImage = new BufferedImage(MIN_WIDTH, MIN_HEIGHT,
-					BufferedImage.TYPE_INT_ARGB);
-			this.imageWidth = MIN_WIDTH;
-			this.imageHeight = MIN_HEIGHT;
+			protected void done() {
+				if(isCancelled() || imageLoader != this){
+					return;
+				}
+				imageLoader = null;
+				try {
+					setImage(get());
+				} catch (Exception e) {
+					e.printStackTrace();
+					JOptionPane.showMessageDialog(ImageComponent.this,
+							"Bild konnte nicht geladen werden.", "Fehler",
+							JOptionPane.ERROR_MESSAGE);
+					originalImage = new BufferedImage(MIN_WIDTH, MIN_HEIGHT,
+							BufferedImage.TYPE_INT_ARGB);
+					imageWidth = MIN_WIDTH;
+					imageHeight = MIN_HEIGHT;
+				}
+			}
+		};
+		imageLoader.execute();
+	}
+	
+	//shows the image and informs the listeners, which start its analysis
+	public void setImage(final BufferedImage image){
+		originalImage = image;
+		displayImage = null;
+		overlayTiles.clear();
+		
+		this.imageWidth = originalImage.getWidth();
+		this.imageHeight = originalImage.getHeight();
+		
+		//inform listeners
+		Iterator<ImageChangeListener> changeListenerIt = imageChangeListeners.iterator();
+		while(changeListenerIt.hasNext()){
+			changeListenerIt.next().onImageChange(originalImage);
 		}
+		
+		resetViewSection();
+		repaint();
 	}
 	
 	public BufferedImage getImage(){
@@ -136,71 +202,164 @@ public class ImageComponent extends JComponent{
 			g2.drawImage(displayImage, null, 0, 0);
 		}
 
+
 		
+		//draw the cached overlay tiles intersecting the clip
+		if(originalImage != null){
+			Rectangle clip = g2.getClipBounds();
+			if(clip == null){
+				clip = new Rectangle(0, 0, getWidth(), getHeight());
+			}
+			validateOverlay();
+			
+			int firstColumn = Math.max(0, clip.x / OVERLAY_TILE_SIZE);
+			int firstRow = Math.max(0, clip.y / OVERLAY_TILE_SIZE);
+			int lastColumn = (clip.x + clip.width - 1) / OVERLAY_TILE_SIZE;
+			int lastRow = (clip.y + clip.height - 1) / OVERLAY_TILE_SIZE;
+			for(int row = firstRow; row <= lastRow; ++row){
+				for(int column = firstColumn; column <= lastColumn; ++column){
+					g2.drawImage(getOverlayTile(column, row), column * OVERLAY_TILE_SIZE, row * OVERLAY_TILE_SIZE, null);
+				}
+			}
+		}
 		
 		if(isViewSectionVisible){
 			g2.drawRect(viewSection.x,viewSection.y, viewSection.width, viewSection.height);
 		}
-		
+
+		g2.dispose();
+	}
 	
-		//Draw descriptor elements
-		Iterator<Integer> descriptorIdIt = descriptorMgr.getRegionIDs();
+	//drops the cached tiles if the regions or the display settings changed
+	private void validateOverlay(){
+		if(overlayRegionRevision != descriptorMgr.getRevision() || overlayDisplayRevision != displayMgr.getRevision()){
+			overlayTiles.clear();
+			overlayRegionRevision = descriptorMgr.getRevision();
+			overlayDisplayRevision = displayMgr.getRevision();
+		}
+	}
+	
+	private BufferedImage getOverlayTile(int column, int row){
+		long key = ((long) column << 32) | row;
+		BufferedImage tile = overlayTiles.get(key);
+		if(tile == null){
+			tile = new BufferedImage(OVERLAY_TILE_SIZE, OVERLAY_TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g2 = tile.createGraphics();
+			g2.translate(-column * OVERLAY_TILE_SIZE, -row * OVERLAY_TILE_SIZE);
+			
+			//labels and lines reach beyond the bounding box
+			Rectangle tileRect = new Rectangle(column * OVERLAY_TILE_SIZE, row * OVERLAY_TILE_SIZE, OVERLAY_TILE_SIZE, OVERLAY_TILE_SIZE);
+			tileRect.grow(OVERLAY_MARGIN, OVERLAY_MARGIN);
+			drawOverlay(g2, session.getRegionsIn(tileRect));
+			
+			g2.dispose();
+			overlayTiles.put(key, tile);
+		}
+		return tile;
+	}
+	
+	//draws the elements of the regions, one pass per element type
+	private void drawOverlay(Graphics2D g2, List<Integer> regionIDs){
+		if(displayMgr.isContoursVisible()){
+			drawContours(g2, regionIDs, true);
+			drawContours(g2, regionIDs, false);
+		}
 		
-		while(descriptorIdIt.hasNext()){
-			Region currentDescriptor = descriptorMgr.getRegion(descriptorIdIt.next());
+		if(displayMgr.isBoundingBoxesVisible()){
+			g2.setStroke(BB_STROKE);
+			g2.setColor(DisplayManager.BB_COLOR);
+			for(int id : regionIDs){
+				Region region = descriptorMgr.getRegion(id);
+				if(region.hasParam(RegionParams.BOUNDING_BOX)){
+					BoundingBox bBox = region.getBoundingBox();
+					g2.drawRect(bBox.getX(), bBox.getY(), bBox.getWidth(), bBox.getHeight());
+				}
+			}
 			
-			if(displayMgr.isBoundingBoxesVisible() && currentDescriptor.hasParam(RegionParams.BOUNDING_BOX)){
-				g2.setStroke(new BasicStroke(DisplayManager.BB_STROKE_WIDTH));
-				g2.setColor(DisplayManager.BB_COLOR);
-				BoundingBox bBox = currentDescriptor.getBoundingBox();
-				g2.drawRect(bBox.getX(), bBox.getY(), bBox.getWidth(), bBox.getHeight());
-				
-				if(displayMgr.isRegionIDsVisible()){
-					g2.setColor(DisplayManager.ID_FONT_COLOR);
-					g2.drawString("id: " + currentDescriptor.getID(), bBox.getX(), bBox.getY() + bBox.getHeight() + 15);
+			if(displayMgr.isRegionIDsVisible() || displayMgr.isAreaSizeVisible()){
+				g2.setColor(DisplayManager.ID_FONT_COLOR);
+				for(int id : regionIDs){
+					Region region = descriptorMgr.getRegion(id);
+					if(region.hasParam(RegionParams.BOUNDING_BOX)){
+						BoundingBox bBox = region.getBoundingBox();
+						if(displayMgr.isRegionIDsVisible()){
+							g2.drawString("id: " + region.getID(), bBox.getX(), bBox.getY() + bBox.getHeight() + 15);
+						}
+						if(displayMgr.isAreaSizeVisible()){
+							g2.drawString("Area: " + region.getArea(), bBox.getX(), bBox.getY() + bBox.getHeight() + 30);
+						}
+					}
 				}
-				
-				if(displayMgr.isAreaSizeVisible()){
-					g2.setColor(DisplayManager.ID_FONT_COLOR);
-					g2.drawString("Area: " + currentDescriptor.getArea(), bBox.getX(), bBox.getY() + bBox.getHeight() + 30);
+			}
+		}
+		
+		if(displayMgr.isCentroidVisible()){
+			g2.setStroke(CENTROID_STROKE);
+			g2.setColor(DisplayManager.CENTROID_COLOR);
+			for(int id : regionIDs){
+				Region region = descriptorMgr.getRegion(id);
+				if(region.hasParam(RegionParams.CENTROID)){
+					Centroid centroid = region.getCentroid();
+					g2.drawOval(centroid.getX(), centroid.getY(), DisplayManager.CENTROID_SIZE, DisplayManager.CENTROID_SIZE);
 				}
 			}
-				
-
-			if(displayMgr.isCentroidVisible() && currentDescriptor.hasParam(RegionParams.CENTROID)){
-				g2.setStroke(new BasicStroke(DisplayManager.CENTROID_STROKE_WIDTH));
-				g2.setColor(DisplayManager.CENTROID_COLOR);
-				
-				Centroid centroid = currentDescriptor.getCentroid();
-				g2.drawOval(centroid.getX(), centroid.getY(), DisplayManager.CENTROID_SIZE, DisplayManager.CENTROID_SIZE);
-				
-				
+		}
+		
+		if(displayMgr.isOrientationVisible()){
+			g2.setStroke(ORIENTATION_LINE_STROKE);
+			g2.setColor(DisplayManager.ORIENTATION_LINE_COLOR);
+			for(int id : regionIDs){
+				Region region = descriptorMgr.getRegion(id);
+				if(region.hasParam(RegionParams.ORIENTATION) && region.hasParam(RegionParams.CENTROID)){
+					Centroid centroid = region.getCentroid();
+					
+					//line of fixed length along the major axis, the angle is in degrees and y points down
+					double angle = Math.toRadians(region.getOrientationAngle());
+					double dx = DisplayManager.ORIENTATION_LINE_LENGTH * Math.cos(angle);
+					double dy = DisplayManager.ORIENTATION_LINE_LENGTH * Math.sin(angle);
+					
+					g2.drawLine(centroid.getX(), centroid.getY(),
+							centroid.getX() + (int) Math.round(dx), centroid.getY() + (int) Math.round(dy));
+				}
 			}
-			
-			if(displayMgr.isOrientationVisible()
-					&& currentDescriptor.hasParam(RegionParams.ORIENTATION)
-					&& currentDescriptor.hasParam(RegionParams.CENTROID)){
-				
-				g2.setStroke(new BasicStroke(DisplayManager.ORIENTATION_LINE_STROKE_WIDTH));
-				g2.setColor(DisplayManager.ORIENTATION_LINE_COLOR);
-				
-				Centroid centroid = currentDescriptor.getCentroid();
-				double angle = currentDescriptor.getOrientationAngle();
-				
-				double posX = centroid.getX() + 1;
-				double posY = centroid.getY() - Math.tan(angle);
-				
-				posX -= centroid.getX();
-				posY -= centroid.getY();
-				
-				posX *= DisplayManager.ORIENTATION_LINE_LENGTH;
-				posY *= DisplayManager.ORIENTATION_LINE_LENGTH;
-				
-				g2.drawLine(centroid.getX() , centroid.getY(), centroid.getX()+(int)posX, centroid.getY()+(int)posY);
+		}
+	}
+	
+	private void drawContours(Graphics2D g2, List<Integer> regionIDs, boolean isOuter){
+		g2.setStroke(isOuter ? OUTER_CONTOUR_STROKE : INNER_CONTOUR_STROKE);
+		g2.setColor(isOuter ? DisplayManager.OUTER_CONTOUR_COLOR : DisplayManager.INNER_CONTOUR_COLOR);
+		
+		for(int id : regionIDs){
+			RegionContours contours = descriptorMgr.getRegion(id).getContours();
+			if(contours == null){
+				continue;
+			}
+			for(int contour = 0; contour < contours.getContourCount(); ++contour){
+				if(contours.isOuter(contour) == isOuter){
+					g2.draw(createContourPath(contours, contour));
+				}
 			}
 		}
-
-		g2.dispose();
+	}
+	
+	//polygon through the corners of the contour, straight steps are joined
+	private static GeneralPath createContourPath(RegionContours contours, int contour){
+		GeneralPath path = new GeneralPath();
+		int xPos = contours.getStartX(contour);
+		int yPos = contours.getStartY(contour);
+		path.moveTo(xPos, yPos);
+		
+		int length = contours.getLength(contour);
+		for(int step = 0; step < length; ++step){
+			int direction = contours.getCode(contour, step);
+			xPos += RegionContours.STEP_X[direction];
+			yPos += RegionContours.STEP_Y[direction];
+			if(step == length - 1 || contours.getCode(contour, step + 1) != direction){
+				path.lineTo(xPos, yPos);
+			}
+		}
+		path.closePath();
+		return path;
 	}
 	
 	public Dimension getPreferredSize() {
@@ -280,6 +439,43 @@ public class ImageComponent extends JComponent{
 		this.repaint();
 	}
 
+	public void onSelectionChange(BufferedImage image, Rectangle changedRect) {
+		displayImage = image;
+		repaint(changedRect);
+	}
+
+	//draws the overlays of new regions while the analysis runs
+	public void onRegionsFound(List<Region> regions) {
+		Rectangle changedRect = null;
+		for(Region region : regions){
+			BoundingBox bBox = region.getBoundingBox();
+			if(bBox == null){
+				continue;
+			}
+			Rectangle regionRect = new Rectangle(bBox.getX(), bBox.getY(), bBox.getWidth() + 1, bBox.getHeight() + 1);
+			if(changedRect == null){
+				changedRect = regionRect;
+			} else {
+				changedRect.add(regionRect);
+			}
+		}
+		if(changedRect != null){
+			changedRect.grow(OVERLAY_MARGIN, OVERLAY_MARGIN);
+			repaint(changedRect);
+		}
+	}
+
+	public void onAnalysisProgress(int percent) {
+	}
+
+	public void onAnalysisDone(AnalysisResult result) {
+		repaint();
+	}
+
+	public void onAnalysisFailed(Throwable cause) {
+		repaint();
+	}
+
 	public boolean isViewSectionVisible() {
 		return isViewSectionVisible;
 	}
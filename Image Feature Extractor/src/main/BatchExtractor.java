@@ -0,0 +1,355 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package main;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import core.AnalysisCache;
+import core.AnalysisResult;
+import core.AnalysisSession;
+import core.Binarizer;
+import core.BinaryFeatureWriter;
+import core.FeatureWriter;
+import core.GlyphDictionary;
+import core.GlyphMatches;
+import core.Region;
+import core.RegionListener;
+import core.StreamingLabeler;
+
+/**
+ * Headless batch command. Analyzes image files and directories of images
+ * on a pool of workers and writes one feature file per image. With -binary
+ * the feature file is a binary column file for BinaryFeatureReader.
+ *
+ * With -stream the images are labeled band by band, so images larger than
+ * the heap can be processed. With -runs the pixels of the regions are
+ * written as runs into a second file. With -clusters the regions are
+ * grouped into clusters of similar regions, written into a third file.
+ * With -dictionary the k nearest glyphs of a glyph dictionary are written
+ * per region into a fourth file. With -cache results are kept in a cache
+ * directory, so images analyzed before are not analyzed again. With
+ * -binarize gray and color images are thresholded before labeling.
+ *
+ * Usage: BatchExtractor [-threads n] [-out directory] [-binary] [-stream]
+ *        [-runs] [-clusters] [-dictionary file [-k n]] [-cache directory]
+ *        [-binarize otsu|sauvola|niblack] file|directory...
+ */
+public class BatchExtractor {
+
+	private static final String USAGE = "Usage: BatchExtractor [-threads n] [-out directory] [-binary] [-stream] [-runs] [-clusters] "
+			+ "[-dictionary file [-k n]] [-cache directory] [-binarize otsu|sauvola|niblack] file|directory...";
+	private static final String FEATURE_FILE_SUFFIX = ".features.csv";
+	private static final String BINARY_FEATURE_FILE_SUFFIX = ".features.bin";
+	private static final String RUN_FILE_SUFFIX = ".runs.csv";
+	private static final String CLUSTER_FILE_SUFFIX = ".clusters.csv";
+	private static final String GLYPH_FILE_SUFFIX = ".glyphs.csv";
+	private static final List<String> IMAGE_SUFFIXES = Arrays.asList(".png", ".jpg", ".jpeg", ".gif", ".bmp");
+
+	private final int threadCount;
+	private final File outputDirectory;
+	private final boolean isStreaming;
+	private final boolean isWritingRuns;
+	private boolean isWritingClusters;
+	private boolean isWritingBinary;
+	private GlyphDictionary dictionary;
+	private int matchCount;
+	private AnalysisCache cache;
+	private final Binarizer binarizer;
+	private final AtomicInteger failedCount;
+
+	//one session per worker thread, the sessions reuse their buffers
+	private final ThreadLocal<AnalysisSession> sessions = new ThreadLocal<AnalysisSession>() {
+		protected AnalysisSession initialValue() {
+			AnalysisSession session = new AnalysisSession();
+			session.setBinarizer(binarizer);
+			session.setCache(cache);
+			return session;
+		}
+	};
+
+	//one streaming labeler per worker thread
+	private final ThreadLocal<StreamingLabeler> streamingLabelers = new ThreadLocal<StreamingLabeler>() {
+		protected StreamingLabeler initialValue() {
+			return new StreamingLabeler();
+		}
+	};
+
+	public BatchExtractor(final int threadCount, final File outputDirectory, final boolean isStreaming,
+			final boolean isWritingRuns) {
+		this(threadCount, outputDirectory, isStreaming, isWritingRuns, null);
+	}
+
+	//the binarizer may be null, it cannot be combined with streaming
+	public BatchExtractor(final int threadCount, final File outputDirectory, final boolean isStreaming,
+			final boolean isWritingRuns, final Binarizer binarizer) {
+		if (isStreaming && binarizer != null) throw new IllegalArgumentException("Streaming does not support binarization");
+		if (isStreaming && isWritingRuns) throw new IllegalArgumentException("Streaming does not support run files");
+		this.threadCount = threadCount;
+		this.outputDirectory = outputDirectory;
+		this.isStreaming = isStreaming;
+		this.isWritingRuns = isWritingRuns;
+		this.binarizer = binarizer;
+		this.failedCount = new AtomicInteger();
+	}
+
+	//clustering needs all regions, it cannot be combined with streaming
+	public void setWritingClusters(final boolean isWritingClusters) {
+		if (isStreaming && isWritingClusters) throw new IllegalArgumentException("Streaming does not support clustering");
+		this.isWritingClusters = isWritingClusters;
+	}
+
+	//binary column files instead of comma separated values, not with streaming
+	public void setWritingBinary(final boolean isWritingBinary) {
+		if (isStreaming && isWritingBinary) throw new IllegalArgumentException("Streaming does not support binary feature files");
+		this.isWritingBinary = isWritingBinary;
+	}
+
+	//classifies the regions against the dictionary, null for none; not with streaming
+	public void setDictionary(final GlyphDictionary dictionary, final int matchCount) {
+		if (isStreaming && dictionary != null) throw new IllegalArgumentException("Streaming does not support classification");
+		this.dictionary = dictionary;
+		this.matchCount = matchCount;
+	}
+
+	//cache shared by all workers, null for none; not with streaming
+	public void setCache(final AnalysisCache cache) {
+		if (isStreaming && cache != null) throw new IllegalArgumentException("Streaming does not support caching");
+		this.cache = cache;
+	}
+
+	//processes all images and returns the number of failed images
+	public int run(final List<File> inputs) throws InterruptedException {
+		List<File> images = new ArrayList<File>();
+		for (File input : inputs) {
+			collectImages(input, images);
+		}
+
+		ExecutorService workers = Executors.newFixedThreadPool(threadCount);
+		for (final File image : images) {
+			workers.execute(new Runnable() {
+				public void run() {
+					process(image);
+				}
+			});
+		}
+		workers.shutdown();
+		workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+		return failedCount.get();
+	}
+
+	private void collectImages(final File input, final List<File> images) {
+		if (input.isDirectory()) {
+			File children[] = input.listFiles();
+			if (children != null) {
+				Arrays.sort(children);
+				for (File child : children) {
+					if (child.isFile() && isImage(child)) {
+						images.add(child);
+					}
+				}
+			}
+		} else {
+			images.add(input);
+		}
+	}
+
+	private static boolean isImage(final File file) {
+		String name = file.getName().toLowerCase();
+		for (String suffix : IMAGE_SUFFIXES) {
+			if (name.endsWith(suffix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void process(final File imageFile) {
+		File directory = outputDirectory != null ? outputDirectory : imageFile.getAbsoluteFile().getParentFile();
+		File featureFile = new File(directory, imageFile.getName()
+				+ (isWritingBinary ? BINARY_FEATURE_FILE_SUFFIX : FEATURE_FILE_SUFFIX));
+
+		try {
+			if (isStreaming) {
+				processStreaming(imageFile, featureFile);
+			} else {
+				BufferedImage image = ImageIO.read(imageFile);
+				if (image == null) {
+					throw new IllegalArgumentException("unsupported image format");
+				}
+				AnalysisSession session = sessions.get();
+				AnalysisResult result = session.analyze(image);
+				if (isWritingBinary) {
+					BinaryFeatureWriter.write(result, featureFile);
+				} else {
+					FeatureWriter.write(result, featureFile);
+				}
+				if (isWritingRuns) {
+					FeatureWriter.writeRuns(result, new File(directory, imageFile.getName() + RUN_FILE_SUFFIX));
+				}
+				if (isWritingClusters) {
+					FeatureWriter.writeClusters(session.clusterRegions(), new File(directory, imageFile.getName() + CLUSTER_FILE_SUFFIX));
+				}
+				if (dictionary != null) {
+					GlyphMatches matches = dictionary.classify(result.getRegionTable(), matchCount);
+					FeatureWriter.writeMatches(matches, new File(directory, imageFile.getName() + GLYPH_FILE_SUFFIX));
+				}
+			}
+		} catch (Exception e) {
+			failedCount.incrementAndGet();
+			System.err.println("Could not analyze " + imageFile + ": " + e.getMessage());
+		} catch (Error e) {
+			//an OutOfMemoryError on one large page must still count as a failure
+			failedCount.incrementAndGet();
+			System.err.println("Could not analyze " + imageFile + ": " + e);
+		}
+	}
+
+	//writes every region as soon as the labeler completes it
+	private void processStreaming(final File imageFile, final File featureFile) throws IOException {
+		final Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(featureFile), Charset.forName("UTF-8")));
+		try {
+			FeatureWriter.writeHeader(out);
+			streamingLabelers.get().analyze(imageFile, new RegionListener() {
+				public void onRegion(Region region) {
+					try {
+						FeatureWriter.writeRegion(region, out);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+			});
+		} finally {
+			out.close();
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		System.setProperty("java.awt.headless", "true");
+
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		File outputDirectory = null;
+		boolean isStreaming = false;
+		boolean isWritingRuns = false;
+		boolean isWritingClusters = false;
+		boolean isWritingBinary = false;
+		File dictionaryFile = null;
+		int matchCount = 1;
+		File cacheDirectory = null;
+		Binarizer binarizer = null;
+		List<File> inputs = new ArrayList<File>();
+
+		for (int i = 0; i < args.length; ++i) {
+			if (args[i].equals("-threads") && i + 1 < args.length) {
+				threadCount = Math.max(1, parseCount(args[++i]));
+			} else if (args[i].equals("-out") && i + 1 < args.length) {
+				outputDirectory = new File(args[++i]);
+				outputDirectory.mkdirs();
+			} else if (args[i].equals("-binary")) {
+				isWritingBinary = true;
+			} else if (args[i].equals("-stream")) {
+				isStreaming = true;
+			} else if (args[i].equals("-runs")) {
+				isWritingRuns = true;
+			} else if (args[i].equals("-clusters")) {
+				isWritingClusters = true;
+			} else if (args[i].equals("-dictionary") && i + 1 < args.length) {
+				dictionaryFile = new File(args[++i]);
+			} else if (args[i].equals("-cache") && i + 1 < args.length) {
+				cacheDirectory = new File(args[++i]);
+			} else if (args[i].equals("-k") && i + 1 < args.length) {
+				matchCount = Math.max(1, parseCount(args[++i]));
+			} else if (args[i].equals("-binarize") && i + 1 < args.length) {
+				try {
+					binarizer = new Binarizer(Binarizer.Method.valueOf(args[++i].toUpperCase()));
+				} catch (IllegalArgumentException e) {
+					System.err.println(USAGE);
+					System.exit(2);
+				}
+			} else {
+				inputs.add(new File(args[i]));
+			}
+		}
+
+		if (inputs.isEmpty()) {
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		if (isStreaming && binarizer != null) {
+			System.err.println("-binarize cannot be combined with -stream");
+			System.exit(2);
+		}
+		if (isStreaming && (isWritingRuns || isWritingClusters || isWritingBinary || dictionaryFile != null
+				|| cacheDirectory != null)) {
+			System.err.println("-runs, -binary, -clusters, -dictionary and -cache cannot be combined with -stream");
+			System.exit(2);
+		}
+
+		BatchExtractor extractor = new BatchExtractor(threadCount, outputDirectory, isStreaming, isWritingRuns, binarizer);
+		extractor.setWritingClusters(isWritingClusters);
+		extractor.setWritingBinary(isWritingBinary);
+		if (cacheDirectory != null) {
+			extractor.setCache(new AnalysisCache(cacheDirectory, AnalysisCache.DEFAULT_MAX_SIZE));
+		}
+		if (dictionaryFile != null) {
+			try {
+				extractor.setDictionary(GlyphDictionary.open(dictionaryFile), matchCount);
+			} catch (IOException e) {
+				System.err.println("Could not open " + dictionaryFile + ": " + e.getMessage());
+				System.exit(2);
+			}
+		}
+		int failed = extractor.run(inputs);
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	//exits with the usage message when the value is not a number
+	private static int parseCount(final String value) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			System.err.println(USAGE);
+			System.exit(2);
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package main;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import core.AnalysisResult;
+import core.AnalysisSession;
+import core.GlyphDictionaryBuilder;
+
+/**
+ * Headless command that compiles a glyph dictionary from labeled images.
+ *
+ * Every image comes with a label file with one "id,label" line per
+ * labeled region, the ids are those of the feature files written by
+ * BatchExtractor. The label is the rest of the line after the first comma.
+ * Regions without a label are left out.
+ *
+ * Usage: DictionaryCompiler dictionary image labels [image labels]...
+ */
+public class DictionaryCompiler {
+
+	private static final String USAGE = "Usage: DictionaryCompiler dictionary image labels [image labels]...";
+
+	private DictionaryCompiler() {
+	}
+
+	//id and label per line, a header line and lines without id are skipped
+	static Map<Integer, String> readLabels(final File file) throws IOException {
+		Map<Integer, String> labels = new HashMap<Integer, String>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), Charset.forName("UTF-8")));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				int comma = line.indexOf(',');
+				if (comma <= 0 || comma == line.length() - 1) {
+					continue;
+				}
+				try {
+					labels.put(Integer.parseInt(line.substring(0, comma).trim()), line.substring(comma + 1));
+				} catch (NumberFormatException e) {
+					//header line
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return labels;
+	}
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		if (args.length < 3 || args.length % 2 == 0) {
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+
+		AnalysisSession session = new AnalysisSession();
+		GlyphDictionaryBuilder builder = new GlyphDictionaryBuilder(session.getTolerances());
+		try {
+			for (int i = 1; i < args.length; i += 2) {
+				File imageFile = new File(args[i]);
+				BufferedImage image = ImageIO.read(imageFile);
+				if (image == null) {
+					throw new IOException("Unsupported image format: " + imageFile);
+				}
+				AnalysisResult result = session.analyze(image);
+				int added = builder.add(result, readLabels(new File(args[i + 1])));
+				System.out.println(imageFile.getName() + ": " + added + " glyphs");
+			}
+			builder.write(new File(args[0]));
+		} catch (IOException e) {
+			System.err.println("Could not compile " + args[0] + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -25,11 +25,13 @@ THE SOFTWARE.
 package main;
 
 import java.io.File;
+import java.util.concurrent.Executor;
 import gui.GUI;
 
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 
+import core.AnalysisCache;
 import core.ImageAnalyzer;
 
 public class ImageRegions {
@@ -37,6 +39,8 @@ public class ImageRegions {
 
 	private static final String TITLE = "Properties of image regions";
 	private static final String INITIAL_OPEN = "data/text.png";
+	//analysis results of opened images, in the home directory
+	private static final String CACHE_DIRECTORY = ".imageregions/cache";
 	private static GUI mainWindow;
 	
 	public ImageRegions(){
@@ -44,7 +48,17 @@ public class ImageRegions {
 		mainWindow.setTitle(TITLE);
 		
 		ImageAnalyzer imgAnalyzer = ImageAnalyzer.getInstance();
+		//regions and progress of the background analysis reach the session on the event dispatch thread
+		imgAnalyzer.setCallbackExecutor(new Executor() {
+			public void execute(Runnable task) {
+				SwingUtilities.invokeLater(task);
+			}
+		});
+		File cacheDirectory = new File(System.getProperty("user.home"), CACHE_DIRECTORY);
+		imgAnalyzer.getSession().setCache(new AnalysisCache(cacheDirectory, AnalysisCache.DEFAULT_MAX_SIZE));
 		mainWindow.getSourceImage().addChangeListener(imgAnalyzer);
+		imgAnalyzer.addSelectionListener(mainWindow.getSourceImage());
+		imgAnalyzer.addAnalysisListener(mainWindow.getSourceImage());
 		
 		//open default file
 		File initialFile = new File(INITIAL_OPEN);
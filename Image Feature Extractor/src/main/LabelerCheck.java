@@ -0,0 +1,169 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2011 Andre Groeschel
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package main;
+
+import java.util.Random;
+
+import core.MomentAccumulator;
+import core.RegionLabeler;
+import core.RegionRuns;
+
+/**
+ * Headless self check of the parallel labeling. Random binary images are
+ * labeled once sequentially with the default strip height and once on
+ * several threads with small strips, so that many regions cross strip
+ * borders. Labels, bounds, moments and runs must be identical. Moment
+ * orders are picked at random, with NO_MOMENTS only labels and runs are
+ * compared.
+ *
+ * Usage: LabelerCheck [iterations [seed]]
+ *
+ * Prints the first difference and exits with status 1 if the labelings
+ * differ.
+ */
+public class LabelerCheck {
+
+	private static final String USAGE = "Usage: LabelerCheck [iterations [seed]]";
+
+	private static final int FOREGROUND = 0xFF000000;
+	private static final int BACKGROUND = 0xFFFFFFFF;
+
+	private LabelerCheck() {
+	}
+
+	//null if both labelings are identical, otherwise the first difference
+	static String compare(final RegionLabeler expected, final RegionLabeler actual) {
+		if (expected.getRegionCount() != actual.getRegionCount()) {
+			return "region count " + expected.getRegionCount() + " != " + actual.getRegionCount();
+		}
+		int expectedLabels[] = expected.getLabels();
+		int actualLabels[] = actual.getLabels();
+		int pixelCount = expected.getImageWidth() * expected.getImageHeight();
+		for (int i = 0; i < pixelCount; ++i) {
+			if (expectedLabels[i] != actualLabels[i]) {
+				return "label of pixel " + i + ": " + expectedLabels[i] + " != " + actualLabels[i];
+			}
+		}
+
+		for (int label = 1; label <= expected.getRegionCount(); ++label) {
+			String runDifference = compareRuns(expected.getRegionRuns(label), actual.getRegionRuns(label), label);
+			if (runDifference != null) {
+				return runDifference;
+			}
+			if (expected.getMomentOrder() == RegionLabeler.NO_MOMENTS) {
+				continue;
+			}
+
+			if (expected.getLeftBound(label) != actual.getLeftBound(label)
+					|| expected.getRightBound(label) != actual.getRightBound(label)
+					|| expected.getUpperBound(label) != actual.getUpperBound(label)
+					|| expected.getLowerBound(label) != actual.getLowerBound(label)) {
+				return "bounds of region " + label;
+			}
+
+			MomentAccumulator expectedMoments = expected.getMoments(label);
+			MomentAccumulator actualMoments = actual.getMoments(label);
+			if (expectedMoments.getOriginX() != actualMoments.getOriginX()
+					|| expectedMoments.getOriginY() != actualMoments.getOriginY()) {
+				return "moment origin of region " + label;
+			}
+			for (int p = 0; p <= expectedMoments.getOrder(); ++p) {
+				for (int q = 0; p + q <= expectedMoments.getOrder(); ++q) {
+					if (expectedMoments.getMoment(p, q) != actualMoments.getMoment(p, q)) {
+						return "moment " + p + "," + q + " of region " + label + ": " + expectedMoments.getMoment(p, q)
+								+ " != " + actualMoments.getMoment(p, q);
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private static String compareRuns(final RegionRuns expectedRuns, final RegionRuns actualRuns, final int label) {
+		if (expectedRuns.getRunCount() != actualRuns.getRunCount()) {
+			return "run count of region " + label + ": " + expectedRuns.getRunCount() + " != " + actualRuns.getRunCount();
+		}
+		for (int run = 0; run < expectedRuns.getRunCount(); ++run) {
+			if (expectedRuns.getRow(run) != actualRuns.getRow(run)
+					|| expectedRuns.getStart(run) != actualRuns.getStart(run)
+					|| expectedRuns.getEnd(run) != actualRuns.getEnd(run)) {
+				return "run " + run + " of region " + label;
+			}
+		}
+		return null;
+	}
+
+	public static void main(String[] args) {
+		int iterations = 500;
+		long seed = System.nanoTime();
+		try {
+			if (args.length > 2) {
+				throw new NumberFormatException();
+			}
+			if (args.length > 0) {
+				iterations = Integer.parseInt(args[0]);
+			}
+			if (args.length > 1) {
+				seed = Long.parseLong(args[1]);
+			}
+		} catch (NumberFormatException e) {
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+
+		Random random = new Random(seed);
+		RegionLabeler sequential = new RegionLabeler(1, RegionLabeler.DEFAULT_STRIP_HEIGHT);
+		RegionLabeler parallel = new RegionLabeler(2, 1);
+		for (int i = 0; i < iterations; ++i) {
+			int width = 1 + random.nextInt(300);
+			int height = 1 + random.nextInt(300);
+			//from sparse specks to a few large regions with holes
+			double density = random.nextDouble();
+			int pixels[] = new int[width * height];
+			for (int j = 0; j < pixels.length; ++j) {
+				pixels[j] = random.nextDouble() < density ? FOREGROUND : BACKGROUND;
+			}
+
+			int parallelism = 2 + random.nextInt(7);
+			int stripHeight = 1 + random.nextInt(16);
+			parallel.setParallelism(parallelism);
+			parallel.setStripHeight(stripHeight);
+			int momentOrders[] = { RegionLabeler.NO_MOMENTS, 1, MomentAccumulator.MAX_ORDER };
+			int momentOrder = momentOrders[random.nextInt(momentOrders.length)];
+			sequential.setMomentOrder(momentOrder);
+			parallel.setMomentOrder(momentOrder);
+			sequential.label(pixels, width, height);
+			parallel.label(pixels, width, height);
+
+			String difference = compare(sequential, parallel);
+			if (difference != null) {
+				System.err.println("Labelings differ (seed " + seed + ", image " + i + ", " + width + "x" + height + ", "
+						+ parallelism + " threads, strip height " + stripHeight + "): " + difference);
+				System.exit(1);
+			}
+		}
+		System.out.println(iterations + " images labeled identically (seed " + seed + ")");
+	}
+}
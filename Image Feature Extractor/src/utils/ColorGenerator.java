@@ -25,15 +25,18 @@ THE SOFTWARE.
 package utils;
 
 import java.awt.Color;
+import java.util.Random;
 
 public class ColorGenerator {
 	
 	private float saturation;
 	private float brightness;
+	private Random random;
 	
-	private ColorGenerator(){
+	public ColorGenerator(){
 		this.saturation = 0.5f;
 		this.brightness = 0.5f;
+		this.random = new Random();
 	}
 	
 	private static class Holder {
@@ -45,9 +48,9 @@ public class ColorGenerator {
 	}
 	
 	public int getRandomColor(){
-		float h = (float) Math.random();
-		float s = (float) (saturation * Math.random() + 1 - saturation);
-		float b = (float) (brightness * Math.random() + 1 - brightness);
+		float h = random.nextFloat();
+		float s = saturation * random.nextFloat() + 1 - saturation;
+		float b = brightness * random.nextFloat() + 1 - brightness;
 		return Color.HSBtoRGB(h, s, b);
 	}
 }